@@ -15,8 +15,9 @@ public final class R {
         public static final int ic_stat_collecting=0x7f020001;
     }
     public static final class id {
-        public static final int msgSpinner=0x7f050001;
+        public static final int msgSpinner=0x7f050002;
         public static final int msgTextView=0x7f050000;
+        public static final int statsTextView=0x7f050001;
     }
     public static final class layout {
         public static final int main=0x7f030000;
@@ -31,6 +32,7 @@ public final class R {
         public static final int okBtnLabel=0x7f040007;
         public static final int runBtnLabel=0x7f040002;
         public static final int setBtnLabel=0x7f040005;
+        public static final int statsText=0x7f04000a;
         public static final int stopBtnLabel=0x7f040003;
     }
 }
@@ -0,0 +1,27 @@
+package cz.collector;
+
+/**
+ * Hodiny, ktere umi naplanovat probuzeni v zadanem case. Na zarizeni je
+ * implementuje AndroidAlarmClock, mimo zarizeni SimulatedAlarmClock.
+ * @author Lukas Ambroz
+ */
+public interface AlarmClock {
+
+	/**
+	 * Vrati aktualni cas hodin
+	 * @return Cas v ms
+	 */
+	long now();
+
+	/**
+	 * Naplanuje probuzeni, drive naplanovane probuzeni je zruseno
+	 * @param triggerAt Cas probuzeni v ms (ve stejne casove ose jako now())
+	 */
+	void schedule(long triggerAt);
+
+	/**
+	 * Zrusi naplanovane probuzeni
+	 */
+	void cancel();
+
+}
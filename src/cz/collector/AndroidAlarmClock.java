@@ -0,0 +1,46 @@
+package cz.collector;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+
+/**
+ * Hodiny planujici probuzeni pomoci AlarmManager. Probuzeni je doruceno
+ * jako broadcast prijemci TickReceiver a probudi zarizeni i ze spanku.
+ * Cas je meren od startu zarizeni, takze neni ovlivnen zmenou hodin.
+ * @author Lukas Ambroz
+ */
+public class AndroidAlarmClock implements AlarmClock {
+
+	/** Objekt poskytujici sluzby spojene s alarmy */
+	private AlarmManager alarmManager;
+	/** Zamer doruceny pri probuzeni */
+	private PendingIntent operation;
+
+	/**
+	 * @param context Rodicovska sluzba
+	 */
+	public AndroidAlarmClock(Context context) {
+		alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+		operation = PendingIntent.getBroadcast(context, 0, new Intent(context, TickReceiver.class), 0);
+	}
+
+	@Override
+	public long now() {
+		return SystemClock.elapsedRealtime();
+	}
+
+	@Override
+	public void schedule(long triggerAt) {
+		// Pro API < 19 je set() presny
+		alarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, operation);
+	}
+
+	@Override
+	public void cancel() {
+		alarmManager.cancel(operation);
+	}
+
+}
@@ -1,7 +1,6 @@
 package cz.collector;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.app.Notification;
 import android.app.PendingIntent;
@@ -9,44 +8,187 @@ import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Binder;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
+import android.os.SystemClock;
 
 /**
  * Sluzba, ktera na pozadi pravidelne sbira data ze senzoru. Pro pravidelny
- * sber je pouzit casovac, jehoz ukoly provadi nacteni a ulozeni ziskanych
- * informaci.
+ * sber jsou pouzita probuzeni zarizeni naplanovana pomoci AlarmManager
+ * (viz WakeupScheduler), mezi kroky sberu muze zarizeni spat. Pri kazdem
+ * probuzeni je zarizeni drzeno vzhure jen po dobu nacteni a ulozeni dat.
+ * Pri dulezite udalosti (viz TriggerEngine) je po dobu davky zarizeni
+ * drzeno vzhure a kroky sberu se zrychli na BURST_PERIOD. Pripojeny klient
+ * muze prijimat statistiky sberu (viz StatsListener), aktualizace jsou
+ * sdruzovany tak, aby nebyly castejsi nez jednou za STATS_PERIOD.
  * @author Lukas Ambroz
  */
 public class BckgndCollector extends Service {
 	
+	/** Akce zameru pro provedeni kroku sberu (viz TickReceiver) */
+	public static final String ACTION_TICK = "cz.collector.action.TICK";
+	
 	/** Identifikator notifikace informujici o behu sluzby */
 	private final int NOTIFICATION_ID = 1;
-	/** Doba mezi spustenim casovace a prvnim ukolem */
-	private final int TIMER_DELAY = 30000;
-	/** Interval mezi ukoly */
-	private final int TIMER_PERIOD = 30000;
+	/** Doba mezi spustenim sberu a prvnim krokem */
+	private final int TICK_DELAY = 30000;
+	/** Interval mezi kroky */
+	private final int TICK_PERIOD = 30000;
+	/** Doba, po kterou jsou pri probuzeni sbirana data ze senzoru pred ulozenim */
+	private final int SAMPLE_WINDOW = 2000;
+	/** Interval mezi kroky behem davky */
+	private final int BURST_PERIOD = 5000;
+	/** Doba pred spousteci udalosti, jejiz hodnoty davka obsahuje */
+	private final long BURST_PRE_TRIGGER = BurstRecorder.PRE_TRIGGER;
+	/** Delka davky od posledni spousteci udalosti */
+	private final long BURST_DURATION = BurstRecorder.DURATION;
+	/** Doba po davce spustene pohybem, kdy pohyb dalsi davku nespousti (10 min) */
+	private final long MOTION_REFRACTORY = 600000;
+	/** Pocet kroku mezi skenovanim wifi siti pro otisk, tj. 60s mezi kroky
+	 * a 10s behem davky (0 otisk wifi siti nesbira) */
+	private final int WIFI_SCAN_TICKS = 2;
+	/** Nejkratsi interval mezi aktualizacemi statistik pro klienta */
+	private final int STATS_PERIOD = 250;
 	
+	/** Priznak indikuje bezici sluzbu (v ramci procesu aplikace) */
+	private static volatile boolean started = false;
 	/** Priznak indikuje bezici sber dat (nikoli sluzbu jako takovou) */
-	private boolean isRunning = false;
+	private volatile boolean isRunning = false;
 	
 	/** Zajistuje ukladani dat */
-	private SensorReader reader = null;
-	/** Casovac pro spusteni periodicky se opakujicich ukolu */
-	private Timer timer;
-	/** Zajistuje beh sluzby i po vypnuti obrazovky zarizeni */
-	private WakeLock wakeLock;
+	private volatile SensorReader reader = null;
+	/** Planovani kroku sberu */
+	private WakeupScheduler scheduler;
+	/** Vlakno pro nacitani a ukladani dat */
+	private HandlerThread worker;
+	/** Handler vlakna pro nacitani a ukladani dat */
+	private Handler workerHandler;
+	/** Ukol pro nacteni a ulozeni dat */
+	private CollectorTask task = new CollectorTask();
+	/** Rizeni davky */
+	private BurstTask burstTask = new BurstTask();
+	/** Zajistuje beh zarizeni behem davky */
+	private WakeLock burstLock;
+	/** Handler hlavniho vlakna pro predani statistik klientovi */
+	private Handler mainHandler;
+	/** Ukol pro predani statistik klientovi */
+	private StatsTask statsTask = new StatsTask();
+	/** Posluchac statistik sberu (null, pokud neni pripojen) */
+	private volatile StatsListener statsListener = null;
+	/** Posluchac zmen hodnot senzoru pro aktualizaci statistik */
+	private Runnable statsChanged = new Runnable() {
+		public void run() {
+			statsTask.changed();
+		}
+	};
 	
 	/** Binder pro pripojeni klienta ke sluzbe */
 	private IBinder binder = new LocalBinder();
 	
 	/**
-	 * Ukol spousteny casovacem pro nacteni a ulozeni dat ze senzoru
+	 * Ukol spousteny pri probuzeni pro nacteni a ulozeni dat ze senzoru. Data
+	 * jsou ulozena po SAMPLE_WINDOW, aby senzory stihly dodat hodnoty, potom
+	 * je uvolnen WakeLock ziskany v TickReceiver.
+	 */
+	public class CollectorTask implements WakeupScheduler.Task, Runnable {
+		public void onTick() {
+			workerHandler.postDelayed(this, SAMPLE_WINDOW);
+		}
+		
+		public void run() {
+			if (isRunning)
+				reader.storeCsvLine();
+			
+			scheduler.tickDone();
+			TickReceiver.release();
+			statsTask.changed();
+		}
+	}
+	
+	/**
+	 * Rizeni davky zaznamu surovych hodnot senzoru. Pri zacatku nebo
+	 * prodlouzeni davky je zarizeni drzeno vzhure a kroky sberu se zrychli,
+	 * po uplynuti davky se vrati puvodni interval.
+	 */
+	public class BurstTask implements TriggerEngine.Listener, Runnable {
+		public void onTrigger(int reason) {
+			if (!isRunning)
+				return;
+			
+			// WakeLock se sam uvolni i v pripade, ze se konec davky nespusti
+			burstLock.acquire(BURST_DURATION + SAMPLE_WINDOW);
+			scheduler.setPeriod(BURST_PERIOD);
+			workerHandler.removeCallbacks(this);
+			workerHandler.postDelayed(this, BURST_DURATION);
+		}
+		
+		public void run() {
+			if (isRunning)
+				reader.flushBurst();
+			
+			scheduler.setPeriod(TICK_PERIOD);
+			if (burstLock.isHeld())
+				burstLock.release();
+		}
+	}
+	
+	/**
+	 * Rozhrani pro prijem statistik sberu. Volani probiha v hlavnim vlakne.
+	 */
+	public interface StatsListener {
+		/**
+		 * Vola se pri zmene statistik, nejvyse jednou za STATS_PERIOD
+		 * @param stats Aktualni statistiky
+		 */
+		void onStats(CollectorStats stats);
+	}
+	
+	/**
+	 * Ukol pro sestaveni statistik sberu a jejich predani klientovi. Zmeny
+	 * hlasene behem STATS_PERIOD od posledniho predani jsou sdruzeny do
+	 * jedne aktualizace. Statistiky se sestavuji ve vlakne sberu (zjisteni
+	 * velikosti souboru), klientovi se predavaji v hlavnim vlakne.
 	 */
-	public class CollectorTask extends TimerTask {
+	public class StatsTask implements Runnable {
+		/** Priznak naplanovane aktualizace */
+		private final AtomicBoolean pending = new AtomicBoolean(false);
+		/** Cas posledni aktualizace (ms od spusteni systemu) */
+		private volatile long publishedAt = 0;
+		
+		/**
+		 * Vola se pri zmene statistik z libovolneho vlakna, naplanuje
+		 * aktualizaci, pokud jiz neni naplanovana
+		 */
+		public void changed() {
+			if ((statsListener == null) || !pending.compareAndSet(false, true))
+				return;
+			
+			long delay = publishedAt + STATS_PERIOD - SystemClock.uptimeMillis();
+			workerHandler.postDelayed(this, Math.max(0, delay));
+		}
+		
 		public void run() {
-			reader.storeCsvLine();
+			pending.set(false);
+			publishedAt = SystemClock.uptimeMillis();
+			SensorReader current = reader;
+			if (!isRunning || (current == null))
+				return;
+			
+			final CollectorStats stats = new CollectorStats(current.getRowCount(), scheduler.getAwakeLast(),
+					current.getCurrentMotion(), current.getCurrentLight(), current.getStorageUsed(),
+					current.getRecentMotion(), current.getHardwareBatched(), current.getBurstLost(),
+					current.getRollupDropped());
+			mainHandler.post(new Runnable() {
+				public void run() {
+					StatsListener listener = statsListener;
+					if (listener != null)
+						listener.onStats(stats);
+				}
+			});
 		}
 	}
 	
@@ -57,6 +199,16 @@ public class BckgndCollector extends Service {
 		BckgndCollector getService() {
 			return BckgndCollector.this;
 		}
+		
+		/**
+		 * Nastavi posluchace statistik sberu, nastaveny posluchac ihned
+		 * obdrzi aktualni statistiky
+		 * @param listener Posluchac nebo null pro odebrani
+		 */
+		void setStatsListener(StatsListener listener) {
+			statsListener = listener;
+			statsTask.changed();
+		}
 	}
 	
 	/**
@@ -64,8 +216,6 @@ public class BckgndCollector extends Service {
 	 */
 	@Override
 	public IBinder onBind(Intent intent) {
-		wakeLock.acquire();
-		
 		return binder;
 	}
 	
@@ -78,18 +228,33 @@ public class BckgndCollector extends Service {
 		
 		// Beh na popredi, aby ji system nemohl ukoncit pri nedostatku pameti
 		startForeground(NOTIFICATION_ID, createNotification());
+		started = true;
+		
+		mainHandler = new Handler(Looper.getMainLooper());
+		worker = new HandlerThread("Collector");
+		worker.start();
+		workerHandler = new Handler(worker.getLooper());
 		
-		timer = new Timer();
+		PowerManager manager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+		burstLock = manager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "CollectorBurst");
+		burstLock.setReferenceCounted(false);
 		
-		PowerManager manager = (PowerManager) getSystemService(POWER_SERVICE);
-		wakeLock = manager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "Collector");
+		scheduler = new WakeupScheduler(new AndroidAlarmClock(this), TICK_PERIOD, task);
 	}
 	
 	/**
-	 * Vola se pri vytvoreni sluzby pomoci metody startService()
+	 * Vola se pri vytvoreni sluzby pomoci metody startService() a pri kazdem
+	 * probuzeni pro krok sberu
 	 */
 	@Override
 	public int onStartCommand(Intent intent, int flags, int startId) {
+		if ((intent != null) && ACTION_TICK.equals(intent.getAction())) {
+			// Pokud se krok nespusti, je uvolnena jen reference tohoto
+			// probuzeni, probihajici krok (OVERLAP) drzi svou do dokonceni
+			if (!isRunning || (scheduler.onAlarm() != WakeupScheduler.STARTED))
+				TickReceiver.release();
+		}
+		
 		return START_STICKY;
 	}
 	
@@ -100,10 +265,19 @@ public class BckgndCollector extends Service {
 	public void onDestroy() {
 		super.onDestroy();
 		
+		started = false;
 		isRunning = false;
-		wakeLock.release();
-		timer.cancel();
-		reader.destroy();
+		statsListener = null;
+		scheduler.stop();
+		workerHandler.removeCallbacks(task);
+		workerHandler.removeCallbacks(burstTask);
+		workerHandler.removeCallbacks(statsTask);
+		worker.quit();
+		if (reader != null)
+			reader.destroy();
+		TickReceiver.releaseAll();
+		if (burstLock.isHeld())
+			burstLock.release();
 	}
 	
 	/**
@@ -115,9 +289,21 @@ public class BckgndCollector extends Service {
 			return;
 		
 		isRunning = true;
-		wakeLock.acquire();
-		reader = new SensorReader(this, msg);
-		timer.schedule(new CollectorTask(), TIMER_DELAY, TIMER_PERIOD);
+		reader = new SensorReader(this, msg, TICK_PERIOD, BURST_PRE_TRIGGER, BURST_DURATION, MOTION_REFRACTORY,
+				WIFI_SCAN_TICKS);
+		reader.setTriggerListener(burstTask);
+		reader.setChangeListener(statsChanged);
+		scheduler.start(TICK_DELAY);
+		statsTask.changed();
+	}
+	
+	/**
+	 * Vrati, zda v procesu aplikace bezi sluzba. Na rozdil od prochazeni
+	 * spustenych sluzeb systemu jde o pouhe precteni priznaku.
+	 * @return true v pripade, ze je sluzba spustena
+	 */
+	public static boolean isStarted() {
+		return started;
 	}
 	
 	/**
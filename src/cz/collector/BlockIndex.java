@@ -0,0 +1,405 @@
+package cz.collector;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index bloku souboru data.csv. Blok je souvisly usek souboru, ktery zacina
+ * klicovym radkem nebo hlavickou (viz Schema), lze ho tedy cist samostatne.
+ * Pro kazdy blok je do souboru indexu pripojen zaznam pevne velikosti
+ * RECORD_SIZE s rozsahem casu a polohy, bitmapou zjistenych hodnot vyctovych
+ * sloupcu a Bloomovymi filtry zprav a MAC adres pripojeneho AP. Ctenar podle
+ * zaznamu preskoci bloky, ktere hledane radky jiste neobsahuji. Cast souboru
+ * bez zaznamu (napr. po padu aplikace) je nutne cist celou.
+ * @author Lukas Ambroz
+ */
+public class BlockIndex {
+
+	/** Magicke cislo souboru indexu ("CIDX") */
+	private static final int MAGIC = 0x43494458;
+	/** Verze formatu indexu */
+	private static final int VERSION = 1;
+	/** Velikost hlavicky souboru indexu */
+	public static final int HEADER_SIZE = 8;
+	/** Velikost zaznamu jednoho bloku */
+	public static final int RECORD_SIZE = 144;
+
+	/** Pocet 64bitovych slov Bloomova filtru (256 bitu) */
+	public static final int BLOOM_WORDS = 4;
+	/** Pocet hasovacich funkci Bloomova filtru */
+	private static final int BLOOM_HASHES = 3;
+
+	/** Tabulky vyctovych sloupcu v bitmape */
+	private static final String[][] ENUMS = { Sample.PROFILES, Sample.DAY_PARTS, Sample.DAYS,
+		Sample.YES_NO, Sample.SCREEN_STATES, Sample.YES_NO, Sample.YES_NO };
+	/** Sloupce (Sample.COL_*) vyctovych sloupcu v bitmape */
+	public static final int[] ENUM_COLUMNS = { Sample.COL_PROFILE, Sample.COL_DAY_PART, Sample.COL_DAY,
+		Sample.COL_WEEKEND, Sample.COL_SCREEN, Sample.COL_HEADSET, Sample.COL_CALL };
+	/** Prvni bit kazdeho vyctoveho sloupce v bitmape */
+	private static final int[] ENUM_SHIFTS = new int[ENUMS.length];
+
+	static {
+		int shift = 0;
+		for (int i = 0; i < ENUMS.length; i++) {
+			ENUM_SHIFTS[i] = shift;
+			shift += ENUMS[i].length;
+		}
+	}
+
+	/**
+	 * Souhrnne udaje (zonova mapa) jednoho bloku
+	 */
+	public static class ZoneMap {
+		/** Pozice zacatku bloku v souboru dat */
+		public long offset;
+		/** Delka bloku v bajtech */
+		public int length;
+		/** Pocet radku bloku */
+		public int rows;
+		/** Pozice hlavicky useku souboru, ke kteremu blok patri */
+		public long headerOffset;
+		/** Nejmensi a nejvetsi cas radku (ms) */
+		public long minTime;
+		public long maxTime;
+		/** Rozsah zemepisne sirky a delky radku s polohou (NaN, pokud blok
+		 * zadny radek s polohou neobsahuje) */
+		public double minLatitude;
+		public double maxLatitude;
+		public double minLongitude;
+		public double maxLongitude;
+		/** Bitmapa zjistenych hodnot vyctovych sloupcu */
+		public long enums;
+		/** Bloomuv filtr zprav */
+		public final long[] messages = new long[BLOOM_WORDS];
+		/** Bloomuv filtr MAC adres pripojeneho AP */
+		public final long[] bssids = new long[BLOOM_WORDS];
+
+		/**
+		 * Vynuluje zaznam pro novy blok
+		 * @param offset Pozice zacatku bloku
+		 * @param headerOffset Pozice hlavicky useku souboru
+		 */
+		public void reset(long offset, long headerOffset) {
+			this.offset = offset;
+			this.headerOffset = headerOffset;
+			length = 0;
+			rows = 0;
+			minLatitude = Double.NaN;
+			maxLatitude = Double.NaN;
+			minLongitude = Double.NaN;
+			maxLongitude = Double.NaN;
+			enums = 0;
+			for (int i = 0; i < BLOOM_WORDS; i++) {
+				messages[i] = 0;
+				bssids[i] = 0;
+			}
+		}
+
+		/**
+		 * Zapocita radek bloku
+		 * @param sample Hodnoty radku
+		 */
+		public void add(Sample sample) {
+			if ((rows == 0) || (sample.time < minTime))
+				minTime = sample.time;
+			if ((rows == 0) || (sample.time > maxTime))
+				maxTime = sample.time;
+			// Radky bez polohy (0, 0) se do rozsahu polohy nezapocitavaji
+			if ((sample.latitude != 0.0) || (sample.longitude != 0.0)) {
+				boolean first = Double.isNaN(minLatitude);
+				if (first || (sample.latitude < minLatitude))
+					minLatitude = sample.latitude;
+				if (first || (sample.latitude > maxLatitude))
+					maxLatitude = sample.latitude;
+				if (first || (sample.longitude < minLongitude))
+					minLongitude = sample.longitude;
+				if (first || (sample.longitude > maxLongitude))
+					maxLongitude = sample.longitude;
+			}
+			rows++;
+
+			enums |= enumBit(0, sample.profile) | enumBit(1, sample.dayPart) | enumBit(2, sample.day)
+					| enumBit(3, sample.weekend) | enumBit(4, sample.screen) | enumBit(5, sample.headset)
+					| enumBit(6, sample.call);
+			bloomAdd(messages, hash(sample.message));
+			if (sample.apMac != 0)
+				bloomAdd(bssids, hash(sample.apMac));
+		}
+
+		/**
+		 * Vrati, zda se casovy rozsah bloku prekryva se zadanym rozsahem
+		 * @param from Zacatek rozsahu (ms)
+		 * @param to Konec rozsahu (ms)
+		 * @return true, pokud se rozsahy prekryvaji
+		 */
+		public boolean overlaps(long from, long to) {
+			return (minTime <= to) && (maxTime >= from);
+		}
+
+		/**
+		 * Vrati, zda blok muze obsahovat radek s polohou v zadanem obdelniku.
+		 * Blok bez radku s polohou (rozsah NaN) neodpovida zadnemu obdelniku.
+		 * @return true, pokud se obdelnik prekryva s rozsahem polohy bloku
+		 */
+		public boolean mayContain(double minLat, double maxLat, double minLon, double maxLon) {
+			return (minLatitude <= maxLat) && (maxLatitude >= minLat)
+					&& (minLongitude <= maxLon) && (maxLongitude >= minLon);
+		}
+
+		/**
+		 * Vrati, zda blok muze obsahovat radek se zadanou zpravou
+		 * @param message Zprava
+		 * @return false, pokud blok zpravu jiste neobsahuje
+		 */
+		public boolean mayContainMessage(String message) {
+			return bloomTest(messages, hash(message));
+		}
+
+		/**
+		 * Vrati, zda blok muze obsahovat radek se zadanym pripojenym AP
+		 * @param bssid MAC adresa AP jako 48bitove cislo
+		 * @return false, pokud blok AP jiste neobsahuje
+		 */
+		public boolean mayContainBssid(long bssid) {
+			return bloomTest(bssids, hash(bssid));
+		}
+
+		/**
+		 * Vrati, zda blok obsahuje radek se zadanou hodnotou vyctoveho sloupce
+		 * @param column Sloupec (jeden z ENUM_COLUMNS)
+		 * @param code Kod hodnoty v tabulce sloupce
+		 * @return false, pokud blok hodnotu jiste neobsahuje
+		 */
+		public boolean mayContainCode(int column, int code) {
+			for (int i = 0; i < ENUM_COLUMNS.length; i++) {
+				if (ENUM_COLUMNS[i] == column)
+					return (enums & enumBit(i, code)) != 0;
+			}
+
+			return true;
+		}
+
+		/**
+		 * Zapise zaznam bloku
+		 */
+		void write(DataOutputStream out) throws IOException {
+			out.writeLong(offset);
+			out.writeInt(length);
+			out.writeInt(rows);
+			out.writeLong(headerOffset);
+			out.writeLong(minTime);
+			out.writeLong(maxTime);
+			out.writeDouble(minLatitude);
+			out.writeDouble(maxLatitude);
+			out.writeDouble(minLongitude);
+			out.writeDouble(maxLongitude);
+			out.writeLong(enums);
+			for (int i = 0; i < BLOOM_WORDS; i++)
+				out.writeLong(messages[i]);
+			for (int i = 0; i < BLOOM_WORDS; i++)
+				out.writeLong(bssids[i]);
+		}
+
+		/**
+		 * Nacte zaznam bloku
+		 */
+		void read(DataInputStream in) throws IOException {
+			offset = in.readLong();
+			length = in.readInt();
+			rows = in.readInt();
+			headerOffset = in.readLong();
+			minTime = in.readLong();
+			maxTime = in.readLong();
+			minLatitude = in.readDouble();
+			maxLatitude = in.readDouble();
+			minLongitude = in.readDouble();
+			maxLongitude = in.readDouble();
+			enums = in.readLong();
+			for (int i = 0; i < BLOOM_WORDS; i++)
+				messages[i] = in.readLong();
+			for (int i = 0; i < BLOOM_WORDS; i++)
+				bssids[i] = in.readLong();
+		}
+	}
+
+	/** Soubor indexu */
+	private File file;
+	/** Zaznam rozpracovaneho bloku */
+	private ZoneMap current = new ZoneMap();
+	/** Priznak rozpracovaneho bloku */
+	private boolean open = false;
+
+	/**
+	 * @param file Soubor indexu
+	 */
+	public BlockIndex(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Zahaji novy blok, predchozi blok je uzavren
+	 * @param offset Pozice zacatku bloku v souboru dat (delka souboru pred
+	 * zapisem prvniho radku bloku)
+	 * @param headerOffset Pozice hlavicky useku souboru
+	 * @return true v pripade uspechu, jinak false
+	 */
+	public boolean start(long offset, long headerOffset) {
+		boolean result = finish(offset);
+
+		current.reset(offset, headerOffset);
+		open = true;
+
+		return result;
+	}
+
+	/**
+	 * Zapocita radek rozpracovaneho bloku
+	 * @param sample Hodnoty radku
+	 */
+	public void add(Sample sample) {
+		if (open)
+			current.add(sample);
+	}
+
+	/**
+	 * Uzavre rozpracovany blok a pripoji jeho zaznam do souboru indexu
+	 * @param end Pozice konce bloku v souboru dat (delka souboru)
+	 * @return true v pripade uspechu, jinak false
+	 */
+	public boolean finish(long end) {
+		if (!open)
+			return true;
+
+		open = false;
+		if ((current.rows == 0) || (end <= current.offset))
+			return true;
+		current.length = (int) (end - current.offset);
+
+		DataOutputStream out = null;
+		try {
+			boolean created = !file.exists() || (file.length() == 0);
+
+			// Soubor bude otevren pro pridavani
+			out = new DataOutputStream(new FileOutputStream(file, true));
+			if (created) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+			}
+			current.write(out);
+		} catch (IOException ioe) {
+			return false;
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException io) {
+					// Zaznam jiz nelze zapsat
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Nacte vsechny zaznamy ze souboru indexu
+	 * @param file Soubor indexu
+	 * @return Zaznamy bloku v poradi podle pozice (prazdny seznam, pokud
+	 * index neexistuje nebo ma jiny format)
+	 * @throws IOException Pri chybe cteni
+	 */
+	public static List<ZoneMap> read(File file) throws IOException {
+		List<ZoneMap> result = new ArrayList<ZoneMap>();
+
+		if (!file.exists())
+			return result;
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION))
+				return result;
+
+			long records = (file.length() - HEADER_SIZE) / RECORD_SIZE;
+			for (long r = 0; r < records; r++) {
+				ZoneMap zone = new ZoneMap();
+				zone.read(in);
+				result.add(zone);
+			}
+		} catch (EOFException eofe) {
+			// Neuplny posledni zaznam
+		} finally {
+			in.close();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Vrati bit hodnoty vyctoveho sloupce v bitmape
+	 */
+	private static long enumBit(int index, int code) {
+		if ((code < 0) || (code >= ENUMS[index].length))
+			return 0;
+
+		return 1L << (ENUM_SHIFTS[index] + code);
+	}
+
+	/**
+	 * Rozptyli bity retezce pro Bloomuv filtr
+	 */
+	private static long hash(String value) {
+		return hash((long) value.hashCode());
+	}
+
+	/**
+	 * Rozptyli bity cisla pro Bloomuv filtr
+	 */
+	private static long hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= key >>> 33;
+		key *= 0xC4CEB9FE1A85EC53L;
+		key ^= key >>> 33;
+
+		return key;
+	}
+
+	/**
+	 * Prida hodnotu do Bloomova filtru, pozice bitu jsou odvozeny ze dvou
+	 * polovin hasovaci hodnoty
+	 */
+	private static void bloomAdd(long[] bloom, long hash) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+
+		for (int i = 0; i < BLOOM_HASHES; i++) {
+			int bit = (h1 + i * h2) & (BLOOM_WORDS * 64 - 1);
+			bloom[bit >>> 6] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * Otestuje hodnotu v Bloomove filtru
+	 */
+	private static boolean bloomTest(long[] bloom, long hash) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+
+		for (int i = 0; i < BLOOM_HASHES; i++) {
+			int bit = (h1 + i * h2) & (BLOOM_WORDS * 64 - 1);
+			if ((bloom[bit >>> 6] & (1L << bit)) == 0)
+				return false;
+		}
+
+		return true;
+	}
+
+}
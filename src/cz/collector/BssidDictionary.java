@@ -0,0 +1,231 @@
+package cz.collector;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Slovnik MAC adres wifi AP. Adresy jsou drzeny jako 48bitova cisla v hasovaci
+ * tabulce s otevrenym adresovanim nad primitivnimi poli a kazde adrese je
+ * prideleno male cislo, kterym se na ni odkazuji ulozene radky. Prirazeni je
+ * ukladano do souboru, aby cisla zustala platna i mezi jednotlivymi sbery.
+ * @author Lukas Ambroz
+ */
+public class BssidDictionary {
+
+	/** Identifikator neplatne nebo nezname adresy */
+	public static final int UNKNOWN = 0;
+
+	/** Maximalni pocet adres ve slovniku */
+	private final int MAX_SIZE = 4096;
+	/** Pocatecni velikost hasovaci tabulky (mocnina 2) */
+	private final int INITIAL_CAPACITY = 64;
+
+	/** Soubor pro ulozeni slovniku */
+	private File file;
+
+	/** Klice hasovaci tabulky (0 oznacuje volne misto) */
+	private long[] keys;
+	/** Identifikatory adres v hasovaci tabulce */
+	private int[] values;
+	/** Adresy podle identifikatoru */
+	private long[] bssids;
+	/** Pocet adres ve slovniku */
+	private int size = 0;
+	/** Pocet adres dosud neulozenych do souboru */
+	private int pending = 0;
+
+	/**
+	 * Konstruktor vytvori prazdny slovnik a nacte drive ulozene adresy
+	 * @param file Soubor pro ulozeni slovniku
+	 */
+	public BssidDictionary(File file) {
+		this.file = file;
+
+		keys = new long[INITIAL_CAPACITY];
+		values = new int[INITIAL_CAPACITY];
+		bssids = new long[INITIAL_CAPACITY / 2 + 1];
+
+		load();
+	}
+
+	/**
+	 * Prevede MAC adresu ve tvaru aa:bb:cc:dd:ee:ff na 48bitove cislo
+	 * @param mac MAC adresa
+	 * @return Adresa jako cislo nebo 0 pro neplatnou adresu
+	 */
+	public static long macToLong(String mac) {
+		if ((mac == null) || (mac.length() != 17))
+			return 0;
+
+		long result = 0;
+		for (int i = 0; i < 17; i++) {
+			char c = mac.charAt(i);
+
+			if ((i % 3) == 2) {
+				if (c != ':')
+					return 0;
+				continue;
+			}
+
+			int digit = Character.digit(c, 16);
+			if (digit < 0)
+				return 0;
+
+			result = (result << 4) | digit;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Vrati identifikator adresy, neznama adresa je do slovniku pridana
+	 * @param bssid Adresa jako 48bitove cislo
+	 * @return Identifikator adresy nebo UNKNOWN pro neplatnou adresu ci plny slovnik
+	 */
+	public int intern(long bssid) {
+		if (bssid == 0)
+			return UNKNOWN;
+
+		int mask = keys.length - 1;
+		int i = hash(bssid) & mask;
+
+		while (keys[i] != 0) {
+			if (keys[i] == bssid)
+				return values[i];
+			i = (i + 1) & mask;
+		}
+
+		if (size >= MAX_SIZE)
+			return UNKNOWN;
+
+		int id = ++size;
+		keys[i] = bssid;
+		values[i] = id;
+		bssids[id] = bssid;
+		pending++;
+
+		// Udrzeni zaplneni tabulky nejvyse na polovine
+		if (size * 2 >= keys.length)
+			grow();
+
+		return id;
+	}
+
+	/**
+	 * Vrati pocet adres ve slovniku
+	 * @return Pocet adres
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Pripoji do souboru adresy pridane od posledniho ulozeni
+	 * @return true v pripade uspechu, jinak false
+	 */
+	public boolean flush() {
+		if (pending == 0)
+			return true;
+
+		FileWriter fw = null;
+		PrintWriter out = null;
+
+		try {
+			// Soubor bude otevren pro pridavani
+			fw = new FileWriter(file, true);
+		} catch (IOException ioe) {
+			return false;
+		}
+
+		out = new PrintWriter(fw, false);
+		for (int id = size - pending + 1; id <= size; id++)
+			out.println(id + ";" + bssids[id]);
+		out.close();
+
+		pending = 0;
+
+		return true;
+	}
+
+	/**
+	 * Nacte drive ulozene adresy ze souboru, chybne radky jsou ignorovany
+	 */
+	private void load() {
+		if ((file == null) || !file.exists())
+			return;
+
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new FileReader(file));
+			String line = null;
+
+			while ((line = in.readLine()) != null) {
+				int sep = line.indexOf(';');
+
+				try {
+					// Identifikatory jsou v souboru ulozeny vzestupne
+					if (Integer.parseInt(line.substring(0, sep)) == size + 1)
+						intern(Long.parseLong(line.substring(sep + 1)));
+				} catch (RuntimeException re) {
+					continue;
+				}
+			}
+		} catch (IOException ioe) {
+			// Slovnik bude vytvoren znovu
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException io) {
+					// Jiz nacteno
+				}
+			}
+		}
+
+		pending = 0;
+	}
+
+	/**
+	 * Zdvojnasobi velikost hasovaci tabulky
+	 */
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+		int mask = keys.length - 1;
+
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] == 0)
+				continue;
+
+			int i = hash(oldKeys[j]) & mask;
+			while (keys[i] != 0)
+				i = (i + 1) & mask;
+
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+		}
+
+		long[] oldBssids = bssids;
+		bssids = new long[keys.length / 2 + 1];
+		System.arraycopy(oldBssids, 0, bssids, 0, oldBssids.length);
+	}
+
+	/**
+	 * Rozptyli bity adresy pro hasovani
+	 */
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= key >>> 33;
+
+		return (int) key;
+	}
+
+}
@@ -0,0 +1,346 @@
+package cz.collector;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Zaznam surovych hodnot senzoru v okoli dulezitych udalosti (davka).
+ * Hodnoty jsou prubezne ukladany do predem alokovaneho kruhoveho bufferu,
+ * ktery mimo davku uchovava jen poslednich nekolik sekund. Pri spousteci
+ * udalosti (viz TriggerEngine) zacne davka, ktera trva nastavenou dobu
+ * (vychozi DURATION). Hodnoty davky vcetne hodnot z nastavene doby pred
+ * udalosti (vychozi PRE_TRIGGER) jsou postupne
+ * zapisovany do souboru metodou drain(), ktera se vola mimo vlakno senzoru.
+ * Soubor ma tvar:
+ * <pre>
+ * #burst version=1 pre_trigger=5000 duration=30000
+ * #trigger ts=1340000000000 reason=screen
+ * 1339999995012;motion;9.8123
+ * 1339999995020;light;120.0
+ * </pre>
+ * Cas radku je prepocten z casu udalosti senzoru na systemovy cas (ms),
+ * vztah obou casu je urcen pri kazde spousteci udalosti. Udalost, jejiz
+ * cas v case senzoru neni znam (broadcast), je zaznamenana az s prvni
+ * hodnotou senzoru nactenou po udalosti. Mezi kroky sberu zarizeni spi
+ * a senzory hodnoty nedodavaji, cas posledni hodnoty tedy muze byt o cely
+ * interval starsi nez udalost.
+ * @author Lukas Ambroz
+ */
+public class BurstRecorder {
+
+	/** Vychozi doba pred spousteci udalosti, jejiz hodnoty jsou zapsany (5s) */
+	public static final long PRE_TRIGGER = 5000;
+	/** Vychozi delka davky od posledni spousteci udalosti (30s) */
+	public static final long DURATION = 30000;
+
+	/** Hodnota akcelerace */
+	public static final byte MOTION = 0;
+	/** Hodnota svetla */
+	public static final byte LIGHT = 1;
+	/** Spousteci udalost, hodnotou je duvod (viz TriggerEngine.REASONS) */
+	private static final byte TRIGGER = 2;
+	/** Nazvy kanalu v souboru */
+	private static final String[] CHANNELS = { "motion", "light" };
+
+	/** Uvod hlavicky souboru */
+	public static final String HEADER_PREFIX = "#burst ";
+	/** Uvod radku spousteci udalosti */
+	public static final String TRIGGER_PREFIX = "#trigger ";
+	/** Verze formatu */
+	public static final int VERSION = 1;
+
+	/** Kapacita kruhoveho bufferu (mocnina 2) */
+	private static final int CAPACITY = 8192;
+
+	/** Doba pred spousteci udalosti, jejiz hodnoty jsou zapsany (ms) */
+	private final long preTrigger;
+	/** Delka davky od posledni spousteci udalosti (ms) */
+	private final long duration;
+
+	/** Casy hodnot (ns, cas udalosti senzoru) */
+	private final long[] times = new long[CAPACITY];
+	/** Hodnoty */
+	private final float[] values = new float[CAPACITY];
+	/** Kanaly hodnot */
+	private final byte[] channels = new byte[CAPACITY];
+	/** Pocet dosud pridanych hodnot (poradi dalsi hodnoty) */
+	private long written = 0;
+	/** Poradi prvni dosud nezapsane hodnoty davky */
+	private long flushed = 0;
+	/** Cas posledni hodnoty (ns) */
+	private long lastTime = 0;
+
+	/** Priznak probihajici davky */
+	private boolean active = false;
+	/** Cas konce davky (ns) */
+	private long burstEnd = 0;
+	/** Pocet hodnot davky prepsanych pred zapisem */
+	private int lost = 0;
+
+	/** Priznak pozadovaneho urceni vztahu casu pri dalsi hodnote */
+	private boolean syncPending = true;
+	/** Duvod spousteci udalosti cekajici na prvni hodnotu (-1, pokud neceka) */
+	private int pendingReason = -1;
+	/** Priznak, zda cekajici udalost prodluzuje probihajici davku */
+	private boolean pendingExtend = false;
+	/** Systemovy cas cekajici udalosti (ms) */
+	private long pendingWall = 0;
+	/** Cas udalosti senzoru odpovidajici casu baseWall (ns) */
+	private long baseEvent = 0;
+	/** Systemovy cas odpovidajici casu baseEvent (ms) */
+	private long baseWall = 0;
+
+	/** Soubor pro zapis davek */
+	private File file;
+	/** Priznak zapsane hlavicky souboru pro tento sber */
+	private boolean headerWritten = false;
+	/** Zamek zapisu do souboru */
+	private final Object drainLock = new Object();
+	/** Kopie hodnot pro zapis mimo zamek bufferu */
+	private final long[] outTimes = new long[CAPACITY];
+	private final float[] outValues = new float[CAPACITY];
+	private final byte[] outChannels = new byte[CAPACITY];
+	/** Radek pro zapis */
+	private final StringBuilder line = new StringBuilder(64);
+
+	/**
+	 * @param file Soubor pro zapis davek
+	 * @param preTrigger Doba pred spousteci udalosti, jejiz hodnoty jsou
+	 * zapsany (ms). Buffer pojme nejvyse CAPACITY hodnot.
+	 * @param duration Delka davky od posledni spousteci udalosti (ms)
+	 */
+	public BurstRecorder(File file, long preTrigger, long duration) {
+		this.file = file;
+		this.preTrigger = preTrigger;
+		this.duration = duration;
+	}
+
+	/**
+	 * Vrati delku davky od posledni spousteci udalosti
+	 * @return Delka davky (ms)
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Prida hodnoty senzoru z davky (viz SensorBatcher). Nevytvari zadne
+	 * objekty. Vztah casu udalosti a systemoveho casu je urcen podle
+	 * posledni hodnoty, ktera byla dorucena nejpozdeji po svem nacteni.
+	 * Cekajici spousteci udalost je zaznamenana s prvni hodnotou nactenou
+	 * po udalosti (podle tohoto vztahu casu).
+	 * @param channel Kanal hodnot (MOTION, LIGHT)
+	 * @param times Casy udalosti senzoru (ns)
+	 * @param values Hodnoty
+	 * @param from Pozice prvni hodnoty
+	 * @param to Pozice za posledni hodnotou
+	 */
+	synchronized public void add(byte channel, long[] times, float[] values, int from, int to) {
+		if (from >= to)
+			return;
+
+		long now = System.currentTimeMillis();
+
+		if (pendingReason >= 0) {
+			// Cas udalosti v case senzoru, davka mohla zacit jeste pred ni
+			long at = times[to - 1] - (now - pendingWall) * 1000000;
+			int first = from;
+			while ((first < to - 1) && (times[first] < at))
+				first++;
+
+			for (int i = from; i < first; i++)
+				put(channel, times[i], values[i]);
+			apply(pendingReason, pendingExtend, times[first]);
+			pendingReason = -1;
+			from = first;
+		}
+
+		for (int i = from; i < to; i++)
+			put(channel, times[i], values[i]);
+
+		if (syncPending) {
+			baseEvent = times[to - 1];
+			baseWall = now;
+			syncPending = false;
+		}
+	}
+
+	/**
+	 * Zaznamena spousteci udalost, jejiz cas v case senzoru neni znam (napr.
+	 * broadcast). Udalost je zaznamenana s prvni hodnotou senzoru nactenou
+	 * po udalosti. Dalsi udalost pred touto hodnotou je sloucena s cekajici
+	 * udalosti.
+	 * @param reason Duvod (viz TriggerEngine.REASONS)
+	 * @param extend Priznak, zda udalost prodluzuje probihajici davku
+	 * @return true, pokud davka zacne nebo bude prodlouzena
+	 */
+	synchronized public boolean trigger(int reason, boolean extend) {
+		if (pendingReason >= 0) {
+			pendingExtend |= extend;
+			return extend;
+		}
+
+		pendingReason = reason;
+		pendingExtend = extend;
+		pendingWall = System.currentTimeMillis();
+
+		return extend || !active || (lastTime > burstEnd);
+	}
+
+	/**
+	 * Zaznamena spousteci udalost se znamym casem (napr. zmena pohybu zjistena
+	 * z hodnot senzoru). Pokud davka neprobiha, zacne nova davka vcetne
+	 * hodnot z nastavene doby pred udalosti. Udalost, ktera neprodluzuje
+	 * probihajici davku (pohyb), je jen zaznamenana.
+	 * @param reason Duvod (viz TriggerEngine.REASONS)
+	 * @param extend Priznak, zda udalost prodluzuje probihajici davku
+	 * @param time Cas udalosti (ns, cas udalosti senzoru)
+	 * @return true, pokud davka zacala nebo byla prodlouzena
+	 */
+	synchronized public boolean trigger(int reason, boolean extend, long time) {
+		if (pendingReason >= 0)
+			return false;
+
+		return apply(reason, extend, time);
+	}
+
+	/**
+	 * Zaznamena spousteci udalost k zadanemu casu, zacne nebo prodlouzi davku
+	 */
+	private boolean apply(int reason, boolean extend, long time) {
+		if (active && (time > burstEnd))
+			active = false;
+
+		if (active && !extend) {
+			put(TRIGGER, time, reason);
+			return false;
+		}
+
+		if (!active) {
+			// Nejstarsi hodnota v bufferu z doby pred udalosti
+			long from = Math.max(0, written - CAPACITY);
+			long limit = time - preTrigger * 1000000;
+			while ((from < written) && (times[index(from)] < limit))
+				from++;
+
+			flushed = from;
+			active = true;
+		}
+
+		put(TRIGGER, time, reason);
+		burstEnd = time + duration * 1000000;
+		syncPending = true;
+
+		return true;
+	}
+
+	/**
+	 * Vrati pocet hodnot davek, ktere byly prepsany pred zapisem
+	 * @return Pocet hodnot
+	 */
+	synchronized public int getLost() {
+		return lost;
+	}
+
+	/**
+	 * Zapise do souboru hodnoty davky pridane od posledniho zapisu. Soubor
+	 * se zapisuje mimo zamek bufferu, callback senzoru tedy neceka na zapis.
+	 * @return true v pripade uspechu, jinak false
+	 */
+	public boolean drain() {
+		synchronized (drainLock) {
+			int count = 0;
+			long wall;
+			long event;
+
+			synchronized (this) {
+				// Hodnoty po konci davky se nezapisuji
+				for (long seq = flushed; seq < written; seq++) {
+					int i = index(seq);
+					if (times[i] > burstEnd)
+						break;
+					outTimes[count] = times[i];
+					outValues[count] = values[i];
+					outChannels[count] = channels[i];
+					count++;
+				}
+				flushed = written;
+				if (lastTime > burstEnd)
+					active = false;
+
+				wall = baseWall;
+				event = baseEvent;
+			}
+
+			if (count == 0)
+				return true;
+
+			return write(count, wall, event);
+		}
+	}
+
+	/**
+	 * Zapise zkopirovane hodnoty do souboru
+	 */
+	private boolean write(int count, long wall, long event) {
+		PrintWriter out = null;
+
+		try {
+			out = new PrintWriter(new FileWriter(file, true), false);
+		} catch (IOException ioe) {
+			return false;
+		}
+
+		if (!headerWritten) {
+			out.println(HEADER_PREFIX + "version=" + VERSION + " pre_trigger=" + preTrigger
+					+ " duration=" + duration);
+			headerWritten = true;
+		}
+
+		for (int i = 0; i < count; i++) {
+			long ts = wall + (outTimes[i] - event) / 1000000;
+
+			line.setLength(0);
+			if (outChannels[i] == TRIGGER) {
+				line.append(TRIGGER_PREFIX).append("ts=").append(ts);
+				line.append(" reason=").append(TriggerEngine.REASONS[(int) outValues[i]]);
+			} else {
+				line.append(ts).append(';').append(CHANNELS[outChannels[i]]).append(';').append(outValues[i]);
+			}
+			out.println(line);
+		}
+		out.close();
+
+		return !out.checkError();
+	}
+
+	/**
+	 * Ulozi hodnotu do bufferu, pripadne prepise nejstarsi nezapsanou
+	 * hodnotu davky
+	 */
+	private void put(byte channel, long time, float value) {
+		int i = index(written);
+
+		times[i] = time;
+		values[i] = value;
+		channels[i] = channel;
+		written++;
+		if (time > lastTime)
+			lastTime = time;
+
+		if (active && (time <= burstEnd) && ((written - flushed) > CAPACITY)) {
+			flushed = written - CAPACITY;
+			lost++;
+		}
+	}
+
+	/**
+	 * Vrati pozici hodnoty v bufferu podle jejiho poradi
+	 */
+	private static int index(long seq) {
+		return (int) (seq & (CAPACITY - 1));
+	}
+
+}
@@ -0,0 +1,91 @@
+package cz.collector;
+
+/**
+ * Detekce nahle zmeny urovne hodnoty (napr. miry pohybu za sekundu, viz
+ * TriggerEngine) oboustrannym CUSUM testem. Uroven a rozptyl hodnoty jsou prubezne sledovany
+ * exponencialnim prumerem, odchylky od urovne jsou normovany smerodatnou
+ * odchylkou a scitany zvlast pro narust a pokles. Zmena je hlasena, pokud
+ * nektery soucet prekroci THRESHOLD. Pridani hodnoty nevytvari zadne
+ * objekty, lze ji tedy volat primo z callbacku senzoru.
+ * @author Lukas Ambroz
+ */
+public class ChangeDetector {
+
+	/** Vaha nove hodnoty v exponencialnim prumeru */
+	private static final double ALPHA = 0.05;
+	/** Tolerovana odchylka v nasobcich smerodatne odchylky */
+	private static final double DRIFT = 0.5;
+	/** Prah souctu odchylek v nasobcich smerodatne odchylky */
+	private static final double THRESHOLD = 8.0;
+	/** Nejmensi uvazovana smerodatna odchylka (m/s2) */
+	private static final double MIN_STD = 0.05;
+	/** Pocet hodnot pro ustaleni urovne pred prvnim testem */
+	private static final int WARMUP = 10;
+
+	/** Pocet hodnot od posledni zmeny */
+	private int count = 0;
+	/** Uroven hodnoty */
+	private double mean = 0.0;
+	/** Rozptyl hodnoty */
+	private double var = 0.0;
+	/** Soucet odchylek nad urovni */
+	private double high = 0.0;
+	/** Soucet odchylek pod urovni */
+	private double low = 0.0;
+
+	/**
+	 * Vynuluje detektor, uroven se ustali znovu
+	 */
+	public void reset() {
+		count = 0;
+		mean = 0.0;
+		var = 0.0;
+		high = 0.0;
+		low = 0.0;
+	}
+
+	/**
+	 * Zahodi soucty odchylek po preruseni rady hodnot (napr. spanek zarizeni
+	 * mezi kroky sberu). Uroven a rozptyl zustavaji, dalsi hodnoty se tedy
+	 * porovnavaji s urovni pred prerusenim, odchylky pred a po preruseni se
+	 * ale nescitaji.
+	 */
+	public void restart() {
+		high = 0.0;
+		low = 0.0;
+	}
+
+	/**
+	 * Prida hodnotu a otestuje zmenu urovne. Po zjisteni zmeny se uroven
+	 * ustaluje znovu od nove hodnoty.
+	 * @param x Hodnota
+	 * @return true, pokud byla zjistena zmena urovne
+	 */
+	public boolean add(double x) {
+		if (count == 0) {
+			mean = x;
+			var = 0.0;
+		}
+		count++;
+
+		double delta = x - mean;
+
+		if (count > WARMUP) {
+			double std = Math.max(Math.sqrt(var), MIN_STD);
+			double z = delta / std;
+
+			high = Math.max(0.0, high + z - DRIFT);
+			low = Math.max(0.0, low - z - DRIFT);
+			if ((high > THRESHOLD) || (low > THRESHOLD)) {
+				reset();
+				return true;
+			}
+		}
+
+		mean += ALPHA * delta;
+		var = (1.0 - ALPHA) * (var + ALPHA * delta * delta);
+
+		return false;
+	}
+
+}
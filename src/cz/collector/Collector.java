@@ -8,10 +8,10 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import android.app.Activity;
-import android.app.ActivityManager;
-import android.app.ActivityManager.RunningServiceInfo;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.ComponentName;
@@ -21,6 +21,7 @@ import android.content.ServiceConnection;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.IBinder;
+import android.text.format.Formatter;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
@@ -31,6 +32,9 @@ import android.widget.TextView;
 /**
  * Hlavni aktivita aplikace. Zajistuje zakladni funkcionalitu krome sberu dat,
  * ktery je odsud pouze rizen prostrednictvim spousteni prislusne sluzby.
+ * Prace se souborem zprav probiha mimo hlavni vlakno v jedinem vlakne (viz
+ * LoadMsgsTask a AddMsgTask), behem sberu jsou zobrazovany statistiky ze
+ * sluzby.
  * @author Lukas Ambroz
  */
 public class Collector extends Activity {
@@ -40,6 +44,15 @@ public class Collector extends Activity {
 	/** Identifikator dialogu pro zadani nove zpravy */
 	private final int NEW_MSG_DIALOG = 0;
 	
+	/**
+	 * Vlakno pro praci se souborem zprav. Je spolecne pro vsechny instance
+	 * aktivity, takze zpravy jsou do souboru pridany v poradi zadani
+	 * a nacteni (napr. po otoceni displeje) probehne az po drive zadanem
+	 * ulozeni. AsyncTask toto nezajisti, do Androidu 3.0 spousti ukoly
+	 * soubezne.
+	 */
+	private static final ExecutorService msgExecutor = Executors.newSingleThreadExecutor();
+	
 	/** Adapter obsahujici vytvorene zpravy */
 	private ArrayAdapter<String> msgs;
 	
@@ -47,23 +60,96 @@ public class Collector extends Activity {
 	private TextView msg;
 	/** Rozbalovaci menu pro vyber zpravy */
 	private Spinner msgSpinner;
+	/** Nahled pro zobrazeni statistik sberu */
+	private TextView stats;
+	/** Priznak nactenych zprav ze souboru */
+	private boolean loaded = false;
 	
 	/** Sluzba pro sber dat na pozadi */
 	private BckgndCollector boundCollector;
+	/** Binder pripojene sluzby */
+	private BckgndCollector.LocalBinder binder;
+	/** Priznak navazani spojeni se sluzbou */
+	private boolean bound = false;
 	/** Spojeni se sluzbou pro sber dat */
 	private ServiceConnection mConnection = new ServiceConnection() {
 		// Vola se po spojeni, vraci objekt sluzby, se kterym jiz lze pracovat
 		public void onServiceConnected(ComponentName className, IBinder service) {
-			boundCollector = ((BckgndCollector.LocalBinder)service).getService();
+			binder = (BckgndCollector.LocalBinder) service;
+			boundCollector = binder.getService();
 			boundCollector.startCollecting(msg.getText().toString());
 			msg.setText(boundCollector.getMsg());
+			
+			// Zobrazovani statistik sberu
+			binder.setStatsListener(statsListener);
 		}
 		
 		// Vola se pri necekanem ukonceni procesu sluzby
 		public void onServiceDisconnected(ComponentName className) {
 			boundCollector = null;
+			binder = null;
+			stats.setVisibility(View.GONE);
 		}
 	};
+	/** Prijem statistik sberu ze sluzby (vola se v hlavnim vlakne) */
+	private BckgndCollector.StatsListener statsListener = new BckgndCollector.StatsListener() {
+		public void onStats(CollectorStats current) {
+			stats.setText(getString(R.string.statsText, current.rows, current.awakeLast, current.motion,
+					current.light, Formatter.formatFileSize(Collector.this, current.storage), current.motionHour,
+					current.hardwareBatched, current.burstLost, current.rollupDropped));
+			stats.setVisibility(View.VISIBLE);
+		}
+	};
+	
+	/**
+	 * Ukol pro nacteni vytvorenych zprav ze souboru v msgExecutor, zpravy
+	 * jsou do seznamu pridany v hlavnim vlakne
+	 */
+	private class LoadMsgsTask implements Runnable {
+		public void run() {
+			final List<String> result = loadMsgs();
+			
+			runOnUiThread(new Runnable() {
+				public void run() {
+					for (String text : result)
+						msgs.add(text);
+					loaded = true;
+					
+					if (!msgs.isEmpty())
+						msgSpinner.setEnabled(true);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Ukol pro ulozeni nove zpravy do souboru v msgExecutor. Pokud se
+	 * zpravu nepodari ulozit, je v hlavnim vlakne odebrana ze seznamu.
+	 */
+	private class AddMsgTask implements Runnable {
+		/** Ukladany radek ve tvaru poradi;zprava */
+		private final String line;
+		/** Ukladana zprava */
+		private final String text;
+		
+		AddMsgTask(String line, String text) {
+			this.line = line;
+			this.text = text;
+		}
+		
+		public void run() {
+			if (storeMsg(line))
+				return;
+			
+			runOnUiThread(new Runnable() {
+				public void run() {
+					msgs.remove(text);
+					if (msgs.isEmpty())
+						msgSpinner.setEnabled(false);
+				}
+			});
+		}
+	}
 	
 	/**
 	 * Nacte z vychoziho souboru vytvorene zpravy
@@ -107,19 +193,22 @@ public class Collector extends Activity {
 		super.onCreate(savedInstanceState);
 		setContentView(R.layout.main);
 		
-		// Vytvoreni ArrayAdapteru a nastaveni aktualizace msgSpinner pri zmene
-		msgs = new ArrayAdapter<String>(this, android.R.layout.simple_spinner_item, loadMsgs());
+		// Vytvoreni ArrayAdapteru a nastaveni aktualizace msgSpinner pri zmene,
+		// zpravy jsou do nej pridany po nacteni ze souboru
+		msgs = new ArrayAdapter<String>(this, android.R.layout.simple_spinner_item, new ArrayList<String>());
 		msgs.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
 		msgs.setNotifyOnChange(true);
 		
-		// Provazani nahledu pro zobrazeni aktualne nastavene zpravy
+		// Provazani nahledu pro zobrazeni aktualne nastavene zpravy a statistik
 		msg = (TextView) findViewById(R.id.msgTextView);
+		stats = (TextView) findViewById(R.id.statsTextView);
 		
 		// Navazani a nastaveni rozbalovaciho menu
 		msgSpinner = (Spinner) findViewById(R.id.msgSpinner);
 		msgSpinner.setAdapter(msgs);
-		if (msgs.isEmpty())
-			msgSpinner.setEnabled(false);
+		msgSpinner.setEnabled(false);
+		
+		msgExecutor.execute(new LoadMsgsTask());
 	}
 	
 	/**
@@ -134,7 +223,7 @@ public class Collector extends Activity {
 		// Pokud bezi sber dat, provede se pripojeni ke sluzbe, kdy se zaroven
 		// v GUI nastavi aktualne pouzita zprava pro sber dat
 		if (isRunning())
-			bindService(new Intent(this, BckgndCollector.class), mConnection, 0);
+			bound = bindService(new Intent(this, BckgndCollector.class), mConnection, 0);
 	}
 	
 	/**
@@ -145,21 +234,38 @@ public class Collector extends Activity {
 	protected void onStop() {
 		super.onStop();
 		
-		if (isRunning())
-			unbindService(mConnection);
+		unbind();
 	}
 	
 	/**
-	 * Prida novou zpravu do seznamu a ulozi ji do souboru
+	 * Prida novou zpravu do seznamu a spusti jeji ulozeni do souboru. Zpravu
+	 * lze pridat az po nacteni ulozenych zprav.
 	 * @param text Nova zprava
 	 * @return true v pripade uspechu, jinak false
 	 */
 	private boolean addMsg(String text) {
 		// Overeni zadane zpravy
-		if (!checkMessage(text))
+		if (!loaded || !checkMessage(text))
 			return false;
 		
-		// Pridani do souboru
+		// Ulozeni do souboru mimo hlavni vlakno
+		msgExecutor.execute(new AddMsgTask(msgs.getCount() + ";" + text, text));
+		
+		// Pridani do seznamu
+		msgs.add(text);
+		
+		if (!msgSpinner.isEnabled())
+			msgSpinner.setEnabled(true);
+		
+		return true;
+	}
+	
+	/**
+	 * Prida radek se zpravou do souboru zprav
+	 * @param line Radek ve tvaru poradi;zprava
+	 * @return true v pripade uspechu, jinak false
+	 */
+	private boolean storeMsg(String line) {
 		File file = new File(Environment.getExternalStorageDirectory(), MSG_FILE_NAME);
 		FileWriter fw = null;
 		PrintWriter out = null;
@@ -173,15 +279,9 @@ public class Collector extends Activity {
 		
 		// Otevreni souboru pro zapis s radkovym bufferovanim a zapis dat
 		out = new PrintWriter(fw, false);
-		out.println(msgs.getCount() + ";" + text);
+		out.println(line);
 		out.close();
 		
-		// Pridani do seznamu
-		msgs.add(text);
-		
-		if (!msgSpinner.isEnabled())
-			msgSpinner.setEnabled(true);
-		
 		return true;
 	}
 	
@@ -270,7 +370,7 @@ public class Collector extends Activity {
 		
 		msg.setText(msgs.getItem(pos));
 		
-		if (isRunning())
+		if (isRunning() && (boundCollector != null))
 			boundCollector.setMsg(msg.getText().toString());
 	}
 	
@@ -279,17 +379,34 @@ public class Collector extends Activity {
 	 */
 	private void runCollector() {
 		startService(new Intent(this, BckgndCollector.class));
-		bindService(new Intent(this, BckgndCollector.class), mConnection, 0);
+		bound = bindService(new Intent(this, BckgndCollector.class), mConnection, 0);
 	}
 	
 	/**
 	 * Zastavi sluzbu pro sber dat
 	 */
 	private void stopCollector() {
-		unbindService(mConnection);
+		unbind();
 		stopService(new Intent(this, BckgndCollector.class));
 	}
 	
+	/**
+	 * Odpoji se od sluzby pro sber dat a prestane zobrazovat statistiky
+	 */
+	private void unbind() {
+		if (!bound)
+			return;
+		
+		if (binder != null)
+			binder.setStatsListener(null);
+		binder = null;
+		boundCollector = null;
+		stats.setVisibility(View.GONE);
+		
+		unbindService(mConnection);
+		bound = false;
+	}
+	
 	/**
 	 * Overi spravnost zadane zpravy
 	 * @param message Zprava pro overeni
@@ -303,19 +420,12 @@ public class Collector extends Activity {
 	}
 	
 	/**
-	 * Vrati, zda na pozadi bezi sluzba pro sber dat
+	 * Vrati, zda na pozadi bezi sluzba pro sber dat. Sluzba bezi ve stejnem
+	 * procesu, staci tedy precist jeji priznak (viz BckgndCollector.isStarted).
 	 * @return true v pripade, ze je sluzba spustena
 	 */
 	private boolean isRunning() {
-		// Projde seznam spustenych sluzeb, zda obsahuje danou sluzbu
-		ActivityManager manager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
-		
-		for (RunningServiceInfo service : manager.getRunningServices(Integer.MAX_VALUE)) {
-			if ("cz.collector.BckgndCollector".equals(service.service.getClassName()))
-				return true;
-		}
-		
-		return false;
+		return BckgndCollector.isStarted();
 	}
 	
 }
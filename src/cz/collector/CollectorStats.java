@@ -0,0 +1,54 @@
+package cz.collector;
+
+/**
+ * Snimek statistik probihajiciho sberu pro zobrazeni v uzivatelskem
+ * rozhrani (viz BckgndCollector.StatsListener). Objekt se po vytvoreni
+ * nemeni, lze jej tedy predat mezi vlakny.
+ * @author Lukas Ambroz
+ */
+public class CollectorStats {
+
+	/** Pocet radku zapsanych behem sberu */
+	public final long rows;
+	/** Doba probuzeni posledniho kroku sberu vcetne okna pro nacteni senzoru (ms) */
+	public final long awakeLast;
+	/** Posledni nactena akcelerace (m/s2) */
+	public final float motion;
+	/** Posledni nactena uroven svetla (lx) */
+	public final float light;
+	/** Prumerna akcelerace za posledni hodinu (m/s2, NaN bez vzorku) */
+	public final float motionHour;
+	/** Velikost souboru s nasbiranymi daty (B) */
+	public final long storage;
+	/** Pocet senzoru s davkovanim udalosti v hardwaru */
+	public final int hardwareBatched;
+	/** Pocet hodnot davek, ktere byly prepsany pred zapisem */
+	public final int burstLost;
+	/** Pocet vzorku, ktere chybi v souhrnech */
+	public final long rollupDropped;
+
+	/**
+	 * @param rows Pocet zapsanych radku
+	 * @param awakeLast Doba probuzeni posledniho kroku (ms)
+	 * @param motion Posledni akcelerace
+	 * @param light Posledni uroven svetla
+	 * @param storage Velikost souboru (B)
+	 * @param motionHour Prumerna akcelerace za posledni hodinu
+	 * @param hardwareBatched Pocet senzoru s davkovanim v hardwaru
+	 * @param burstLost Pocet prepsanych hodnot davek
+	 * @param rollupDropped Pocet vzorku chybejicich v souhrnech
+	 */
+	public CollectorStats(long rows, long awakeLast, float motion, float light, long storage, float motionHour,
+			int hardwareBatched, int burstLost, long rollupDropped) {
+		this.rows = rows;
+		this.awakeLast = awakeLast;
+		this.motion = motion;
+		this.light = light;
+		this.storage = storage;
+		this.motionHour = motionHour;
+		this.hardwareBatched = hardwareBatched;
+		this.burstLost = burstLost;
+		this.rollupDropped = rollupDropped;
+	}
+
+}
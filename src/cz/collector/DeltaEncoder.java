@@ -0,0 +1,80 @@
+package cz.collector;
+
+/**
+ * Prevod vzorku na radky souboru data.csv, ktere obsahuji jen zmenene
+ * sloupce (viz Schema). Vetsina sloupcu (profil, cast dne, obrazovka, AP,
+ * zprava apod.) se meni jen zridka. Statistiky akcelerace a svetla se
+ * pocitaji pro kazde okno znovu a opakuji se (po zaokrouhleni, viz
+ * Sample.roundStats()) jen v klidu nebo ve tme, kdy je zmenovy radek
+ * vyrazne kratsi nez uplny. Uplny (klicovy) radek je zapsan na
+ * zacatku useku souboru a dale nejmene kazdy keyframe-ty radek, aby ctenar
+ * mohl zacit cist od kterehokoli klicoveho radku.
+ * @author Lukas Ambroz
+ */
+public class DeltaEncoder {
+
+	/** Nejvyssi pocet radku mezi klicovymi radky */
+	private final int keyframe;
+	/** Naposledy zapsane hodnoty */
+	private final Sample last = new Sample();
+	/** Priznak platnych hodnot v last */
+	private boolean hasLast = false;
+	/** Pocet radku od posledniho klicoveho radku */
+	private int sinceKeyframe = 0;
+	/** Buffer pro sestaveni radku */
+	private final StringBuilder sb = new StringBuilder(256);
+
+	/**
+	 * @param keyframe Nejvyssi pocet radku mezi klicovymi radky (1, pokud
+	 * maji byt vsechny radky uplne)
+	 */
+	public DeltaEncoder(int keyframe) {
+		this.keyframe = keyframe;
+	}
+
+	/**
+	 * Zajisti, ze dalsi radek bude klicovy (napr. za novou hlavickou)
+	 */
+	public void reset() {
+		hasLast = false;
+	}
+
+	/**
+	 * Vrati, zda dalsi radek bude klicovy
+	 * @return true, pokud bude dalsi radek klicovy
+	 */
+	public boolean isKeyframeDue() {
+		return !hasLast || (sinceKeyframe + 1 >= keyframe);
+	}
+
+	/**
+	 * Prevede vzorek na radek a zapamatuje si jeho hodnoty pro dalsi radek
+	 * @param sample Vzorek
+	 * @return Uplny nebo zmenovy radek
+	 */
+	public String encode(Sample sample) {
+		sb.setLength(0);
+
+		if (isKeyframeDue()) {
+			sample.appendCsvLine(sb);
+			sinceKeyframe = 0;
+		} else {
+			// Cas se meni vzdy a je uveden bez pozice
+			sb.append(Schema.DELTA_PREFIX);
+			sample.appendColumn(sb, Sample.COL_TIME);
+			for (int col = Sample.COL_TIME + 1; col < Sample.COLUMN_COUNT; col++) {
+				if (sample.sameColumn(last, col))
+					continue;
+				sb.append(',').append(col).append('=');
+				sample.appendColumn(sb, col);
+			}
+			sinceKeyframe++;
+		}
+
+		last.copyFrom(sample);
+		hasLast = true;
+
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,159 @@
+package cz.collector;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Slovnik zprav, pro ktere probiha sber. Kazde zprave je prideleno male
+ * cislo, kterym se na ni odkazuji souhrny vzorku (viz RollupSlot). Prirazeni
+ * je ukladano do souboru ve tvaru id;zprava, aby cisla zustala platna i mezi
+ * jednotlivymi sbery.
+ * @author Lukas Ambroz
+ */
+public class LabelDictionary {
+
+	/** Identifikator prazdne zpravy */
+	public static final int UNKNOWN = 0;
+
+	/** Soubor pro ulozeni slovniku */
+	private File file;
+	/** Identifikatory podle zprav */
+	private Map<String, Integer> ids = new HashMap<String, Integer>();
+	/** Zpravy podle identifikatoru (na pozici 0 je prazdna zprava) */
+	private List<String> labels = new ArrayList<String>();
+	/** Pocet zprav dosud neulozenych do souboru */
+	private int pending = 0;
+
+	/**
+	 * Konstruktor nacte drive ulozene zpravy
+	 * @param file Soubor pro ulozeni slovniku
+	 */
+	public LabelDictionary(File file) {
+		this.file = file;
+		labels.add("");
+
+		load();
+	}
+
+	/**
+	 * Vrati identifikator zpravy, neznama zprava je do slovniku pridana
+	 * @param label Zprava
+	 * @return Identifikator zpravy nebo UNKNOWN pro prazdnou zpravu
+	 */
+	synchronized public int intern(String label) {
+		if ((label == null) || (label.length() == 0))
+			return UNKNOWN;
+
+		Integer id = ids.get(label);
+		if (id != null)
+			return id;
+
+		ids.put(label, labels.size());
+		labels.add(label);
+		pending++;
+
+		return labels.size() - 1;
+	}
+
+	/**
+	 * Vrati identifikator zpravy, slovnik nemeni
+	 * @param label Zprava
+	 * @return Identifikator zpravy nebo UNKNOWN pro prazdnou nebo neznamou
+	 * zpravu
+	 */
+	synchronized public int getId(String label) {
+		if (label == null)
+			return UNKNOWN;
+
+		Integer id = ids.get(label);
+
+		return (id != null) ? id : UNKNOWN;
+	}
+
+	/**
+	 * Vrati zpravu podle identifikatoru
+	 * @param id Identifikator zpravy
+	 * @return Zprava nebo prazdny retezec
+	 */
+	synchronized public String getLabel(int id) {
+		if ((id <= UNKNOWN) || (id >= labels.size()))
+			return "";
+
+		return labels.get(id);
+	}
+
+	/**
+	 * Pripoji do souboru zpravy pridane od posledniho ulozeni
+	 * @return true v pripade uspechu, jinak false
+	 */
+	synchronized public boolean flush() {
+		if (pending == 0)
+			return true;
+
+		FileWriter fw = null;
+		PrintWriter out = null;
+
+		try {
+			// Soubor bude otevren pro pridavani
+			fw = new FileWriter(file, true);
+		} catch (IOException ioe) {
+			return false;
+		}
+
+		out = new PrintWriter(fw, false);
+		for (int id = labels.size() - pending; id < labels.size(); id++)
+			out.println(id + ";" + labels.get(id));
+		out.close();
+
+		pending = 0;
+
+		return true;
+	}
+
+	/**
+	 * Nacte drive ulozene zpravy ze souboru, chybne radky jsou ignorovany
+	 */
+	private void load() {
+		if ((file == null) || !file.exists())
+			return;
+
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new FileReader(file));
+			String line = null;
+
+			while ((line = in.readLine()) != null) {
+				int sep = line.indexOf(';');
+
+				try {
+					// Identifikatory jsou v souboru ulozeny vzestupne
+					if (Integer.parseInt(line.substring(0, sep)) == labels.size())
+						intern(line.substring(sep + 1));
+				} catch (RuntimeException re) {
+					continue;
+				}
+			}
+		} catch (IOException ioe) {
+			// Slovnik bude vytvoren znovu
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException io) {
+					// Jiz nacteno
+				}
+			}
+		}
+
+		pending = 0;
+	}
+
+}
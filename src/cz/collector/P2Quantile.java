@@ -0,0 +1,127 @@
+package cz.collector;
+
+/**
+ * Prubezny odhad kvantilu algoritmem P2 (Jain, Chlamtac). Odhad je udrzovan
+ * v peti znackach s konstantni pameti, pridani hodnoty nevytvari zadne
+ * objekty.
+ * @author Lukas Ambroz
+ */
+public class P2Quantile {
+
+	/** Odhadovany kvantil (0 az 1) */
+	private final double p;
+	/** Vysky znacek */
+	private final double[] q = new double[5];
+	/** Pozice znacek */
+	private final int[] n = new int[5];
+	/** Pozadovane pozice znacek */
+	private final double[] np = new double[5];
+	/** Prirustky pozadovanych pozic */
+	private final double[] dn = new double[5];
+	/** Pocet pridanych hodnot */
+	private int count = 0;
+
+	/**
+	 * @param p Odhadovany kvantil (napr. 0.5 pro median)
+	 */
+	public P2Quantile(double p) {
+		this.p = p;
+		dn[0] = 0.0;
+		dn[1] = p / 2.0;
+		dn[2] = p;
+		dn[3] = (1.0 + p) / 2.0;
+		dn[4] = 1.0;
+	}
+
+	/**
+	 * Vynuluje odhad
+	 */
+	public void reset() {
+		count = 0;
+	}
+
+	/**
+	 * Prida hodnotu
+	 * @param x Hodnota
+	 */
+	public void add(double x) {
+		if (count < 5) {
+			// Prvnich pet hodnot se uklada serazene
+			int i = count++;
+			while ((i > 0) && (q[i - 1] > x)) {
+				q[i] = q[i - 1];
+				i--;
+			}
+			q[i] = x;
+
+			if (count == 5) {
+				for (int j = 0; j < 5; j++)
+					n[j] = j;
+				np[0] = 0.0;
+				np[1] = 2.0 * p;
+				np[2] = 4.0 * p;
+				np[3] = 2.0 + 2.0 * p;
+				np[4] = 4.0;
+			}
+			return;
+		}
+
+		int k;
+		if (x < q[0]) {
+			q[0] = x;
+			k = 0;
+		} else if (x >= q[4]) {
+			q[4] = x;
+			k = 3;
+		} else {
+			k = 0;
+			while (x >= q[k + 1])
+				k++;
+		}
+
+		for (int i = k + 1; i < 5; i++)
+			n[i]++;
+		for (int i = 0; i < 5; i++)
+			np[i] += dn[i];
+		count++;
+
+		// Posun vnitrnich znacek k pozadovanym pozicim
+		for (int i = 1; i < 4; i++) {
+			double d = np[i] - n[i];
+
+			if (((d >= 1.0) && ((n[i + 1] - n[i]) > 1)) || ((d <= -1.0) && ((n[i - 1] - n[i]) < -1))) {
+				int ds = (d > 0) ? 1 : -1;
+				double qp = parabolic(i, ds);
+
+				if ((q[i - 1] < qp) && (qp < q[i + 1]))
+					q[i] = qp;
+				else
+					q[i] = q[i] + ds * (q[i + ds] - q[i]) / (n[i + ds] - n[i]);
+				n[i] += ds;
+			}
+		}
+	}
+
+	/**
+	 * Vrati odhad kvantilu
+	 * @return Odhad nebo 0, pokud nebyla pridana zadna hodnota
+	 */
+	public double get() {
+		if (count == 0)
+			return 0.0;
+		if (count < 5)
+			return q[(int) Math.round(p * (count - 1))];
+
+		return q[2];
+	}
+
+	/**
+	 * Parabolicka interpolace vysky znacky
+	 */
+	private double parabolic(int i, int ds) {
+		return q[i] + (double) ds / (n[i + 1] - n[i - 1])
+				* ((n[i] - n[i - 1] + ds) * (q[i + 1] - q[i]) / (n[i + 1] - n[i])
+				+ (n[i + 1] - n[i] - ds) * (q[i] - q[i - 1]) / (n[i] - n[i - 1]));
+	}
+
+}
@@ -0,0 +1,258 @@
+package cz.collector;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Prubezne rozpoznava opakovane navstevovana mista (domov, prace apod.) primo
+ * v zarizeni. Polohy jsou rozdelovany do bunek pravidelne mrizky, bunky, ve
+ * kterych zarizeni setrva dostatecne dlouho, se stanou mistem. Do pobytu se
+ * zapocitavaji jen bunky v okoli bunky, ve ktere pobyt zacal, takze prujezd
+ * kolem mista ho nerozsiruje. Bunky mist jsou drzeny zvlast od bunek
+ * probihajiciho pobytu a cestovani je nevytlaci, jejich pocet je omezen
+ * MAX_PLACE_CELLS. Wifi AP jsou k mistum prirazovany, takze misto lze
+ * rozpoznat i bez aktualni polohy, AP jsou drzeny v LRU cache. Spotreba
+ * pameti je tak omezena bez ohledu na delku sberu a prirazeni vzorku je
+ * O(1). Mista jsou ulozena ihned po rozpoznani nebo rozsireni.
+ * @author Lukas Ambroz
+ */
+public class PlaceDetector {
+
+	/** Identifikator neznameho mista */
+	public static final int UNKNOWN = 0;
+
+	/** Velikost bunky mrizky ve stupnich (priblizne 100 m) */
+	private final double CELL_SIZE = 0.001;
+	/** Pocet po sobe jdoucich vzorku v okoli bunky, po kterem se bunka stane mistem */
+	private final int PLACE_MIN_SAMPLES = 10;
+	/** Maximalni pocet bunek patricich k mistum */
+	private final int MAX_PLACE_CELLS = 4096;
+	/** Maximalni pocet AP prirazenych k mistum */
+	private final int MAX_APS = 256;
+
+	/** Soubor pro ulozeni rozpoznanych mist */
+	private File file;
+
+	/** Mista podle klice bunky */
+	private Map<Long, Integer> places = new HashMap<Long, Integer>();
+	/** Bunky aktualniho pobytu (nejvyse 9 bunek okoli dwellKey) */
+	private Set<Long> dwellCells = new HashSet<Long>();
+	/** Mista podle MAC adresy AP (LRU) */
+	private Map<Long, Integer> aps;
+	/** Identifikator pro dalsi nove misto */
+	private int nextPlace = UNKNOWN + 1;
+	/** Klic bunky, ve ktere zacal aktualni pobyt */
+	private long dwellKey = 0;
+	/** Pocet po sobe jdoucich vzorku aktualniho pobytu (0 mimo pobyt) */
+	private int dwell = 0;
+
+	/**
+	 * Konstruktor vytvori prazdne cache a nacte drive rozpoznana mista
+	 * @param file Soubor pro ulozeni rozpoznanych mist
+	 */
+	public PlaceDetector(File file) {
+		this.file = file;
+
+		aps = new LinkedHashMap<Long, Integer>(MAX_APS, 0.75F, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+				return size() > MAX_APS;
+			}
+		};
+
+		load();
+	}
+
+	/**
+	 * Prida novy vzorek a vrati misto, ve kterem se zarizeni nachazi
+	 * @param latitude Zemepisna sirka (0 pro neznamou polohu)
+	 * @param longitude Zemepisna delka (0 pro neznamou polohu)
+	 * @param bssid MAC adresa pripojeneho AP (0, pokud neni pripojen)
+	 * @return Identifikator mista nebo UNKNOWN
+	 */
+	public int update(double latitude, double longitude, long bssid) {
+		int place = UNKNOWN;
+
+		// Pripojeny AP je nejspolehlivejsim urcenim mista (i uvnitr budov)
+		if (bssid != 0) {
+			Integer known = aps.get(bssid);
+			if (known != null)
+				place = known;
+		}
+
+		if ((latitude != 0.0) || (longitude != 0.0)) {
+			long row = (long) Math.floor(latitude / CELL_SIZE);
+			long col = (long) Math.floor(longitude / CELL_SIZE);
+			long key = cellKey(row, col);
+
+			// Pobyt trva, dokud vzorky zustavaji v okoli bunky, ve ktere
+			// zacal. Kazdy jiny presun zacina novy pobyt.
+			if ((dwell > 0) && isNeighbour(dwellKey, key)) {
+				dwell++;
+			} else {
+				dwellKey = key;
+				dwell = 1;
+				dwellCells.clear();
+			}
+			dwellCells.add(key);
+
+			if (place == UNKNOWN)
+				place = findPlace(row, col);
+
+			// Dostatecne dlouhy pobyt vytvori nove misto nebo rozsiri znamo
+			if (dwell >= PLACE_MIN_SAMPLES) {
+				if ((place == UNKNOWN) && (places.size() < MAX_PLACE_CELLS))
+					place = nextPlace++;
+				if ((place != UNKNOWN) && assign(place))
+					save();
+			}
+		} else {
+			dwell = 0;
+			dwellCells.clear();
+		}
+
+		if ((place != UNKNOWN) && (bssid != 0))
+			aps.put(bssid, place);
+
+		return place;
+	}
+
+	/**
+	 * Priradi bunky aktualniho pobytu k mistu
+	 * @return true, pokud byla pridana nejaka bunka
+	 */
+	private boolean assign(int place) {
+		boolean changed = false;
+
+		for (Long key : dwellCells) {
+			if (places.containsKey(key) || (places.size() >= MAX_PLACE_CELLS))
+				continue;
+			places.put(key, place);
+			changed = true;
+		}
+
+		return changed;
+	}
+
+	/**
+	 * Ulozi rozpoznana mista do souboru. Mista jsou zapsana do pomocneho
+	 * souboru, ktery nahradi puvodni, takze preruseny zapis drive ulozena
+	 * mista nezkazi.
+	 * @return true v pripade uspechu, jinak false
+	 */
+	public boolean save() {
+		File tmp = new File(file.getPath() + ".tmp");
+		FileWriter fw = null;
+		PrintWriter out = null;
+
+		try {
+			// Soubor bude prepsan
+			fw = new FileWriter(tmp, false);
+		} catch (IOException ioe) {
+			return false;
+		}
+
+		out = new PrintWriter(fw, false);
+		out.println("n;" + nextPlace);
+		for (Map.Entry<Long, Integer> entry : places.entrySet())
+			out.println("c;" + entry.getKey() + ";" + entry.getValue());
+		for (Map.Entry<Long, Integer> entry : aps.entrySet())
+			out.println("a;" + entry.getKey() + ";" + entry.getValue());
+		out.close();
+
+		if (out.checkError())
+			return false;
+
+		// Na Androidu (Linux) renameTo nahradi existujici soubor atomicky
+		return tmp.renameTo(file);
+	}
+
+	/**
+	 * Nacte drive rozpoznana mista ze souboru, chybne radky jsou ignorovany
+	 */
+	private void load() {
+		if ((file == null) || !file.exists())
+			return;
+
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new FileReader(file));
+			String line = null;
+
+			while ((line = in.readLine()) != null) {
+				String[] parts = line.split(";");
+
+				try {
+					if ("n".equals(parts[0])) {
+						nextPlace = Math.max(nextPlace, Integer.parseInt(parts[1]));
+					} else if ("c".equals(parts[0])) {
+						if (places.size() < MAX_PLACE_CELLS)
+							places.put(Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+					} else if ("a".equals(parts[0])) {
+						aps.put(Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+					}
+				} catch (RuntimeException re) {
+					continue;
+				}
+			}
+		} catch (IOException ioe) {
+			// Mista budou rozpoznavana znovu
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException io) {
+					// Jiz nacteno
+				}
+			}
+		}
+	}
+
+	/**
+	 * Vyhleda misto v bunce nebo v jejim bezprostrednim okoli
+	 * @param row Radek bunky
+	 * @param col Sloupec bunky
+	 * @return Identifikator mista nebo UNKNOWN
+	 */
+	private int findPlace(long row, long col) {
+		for (long r = row - 1; r <= row + 1; r++) {
+			for (long c = col - 1; c <= col + 1; c++) {
+				Integer place = places.get(cellKey(r, c));
+
+				if (place != null)
+					return place;
+			}
+		}
+
+		return UNKNOWN;
+	}
+
+	/**
+	 * Vrati klic bunky slozeny z radku a sloupce
+	 */
+	private static long cellKey(long row, long col) {
+		return (row << 32) | (col & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Vrati, zda jsou bunky totozne nebo sousedni
+	 */
+	private static boolean isNeighbour(long a, long b) {
+		long dr = (a >> 32) - (b >> 32);
+		long dc = (int) a - (int) b;
+
+		return (Math.abs(dr) <= 1) && (Math.abs(dc) <= 1);
+	}
+
+}
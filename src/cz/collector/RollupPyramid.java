@@ -0,0 +1,209 @@
+package cz.collector;
+
+import java.io.File;
+
+/**
+ * Souhrny vzorku v nekolika urovnich rozliseni pro rychle dotazy na dlouhou
+ * historii. Nejjemnejsi urovni jsou samotne vzorky aktualniho sberu (viz
+ * SampleStore), dalsi urovne (5 min, 1 h, 1 den) jsou prubezne udrzovany
+ * pri pridani kazdeho vzorku a ukladany do vlastnich souboru (viz
+ * RollupTier). Dotaz vybere nejjemnejsi uroven, ve ktere zadany rozsah
+ * obsahuje nejvyse pozadovany pocet bodu, cena dotazu tedy zavisi na
+ * pozadovanem poctu bodu (napr. sirce grafu), nikoli na delce historie.
+ * @author Lukas Ambroz
+ */
+public class RollupPyramid {
+
+	/** Delky slotu jednotlivych urovni (5 min, 1 h, 1 den) */
+	public static final long[] WIDTHS = { 300000L, 3600000L, 86400000L };
+	/** Nazvy souboru jednotlivych urovni */
+	private static final String[] FILE_NAMES = { "rollup_5m.bin", "rollup_1h.bin", "rollup_1d.bin" };
+	/** Nazev souboru slovniku zprav */
+	private static final String LABELS_FILE_NAME = "rollup_labels.csv";
+
+	/**
+	 * Rozhrani pro prochazeni slotu vysledku dotazu
+	 */
+	public interface SlotVisitor {
+		/**
+		 * Vola se pro kazdy neprazdny slot v poradi podle casu. Slot je platny
+		 * pouze behem volani.
+		 * @param slot Souhrn vzorku slotu
+		 */
+		void visit(RollupSlot slot);
+	}
+
+	/** Urovne souhrnu od nejjemnejsi */
+	private RollupTier[] tiers = new RollupTier[WIDTHS.length];
+	/** Slovnik zprav */
+	private LabelDictionary labels;
+	/** Adresar pro soubory urovni */
+	private File dir;
+	/** Vzorky aktualniho sberu */
+	private SampleStore store;
+	/** Interval mezi vzorky (ms) */
+	private long interval;
+	/** Cas prvniho vzorku aktualniho sberu (-1, pokud dosud nebyl pridan) */
+	private long sessionStart = -1;
+
+	/**
+	 * Konstruktor otevre soubory urovni v zadanem adresari
+	 * @param dir Adresar pro soubory urovni
+	 * @param store Vzorky aktualniho sberu (nejjemnejsi uroven)
+	 * @param interval Interval mezi vzorky (ms)
+	 */
+	public RollupPyramid(File dir, SampleStore store, long interval) {
+		this.dir = dir;
+		this.store = store;
+		this.interval = interval;
+
+		labels = new LabelDictionary(new File(dir, LABELS_FILE_NAME));
+		for (int t = 0; t < WIDTHS.length; t++)
+			tiers[t] = new RollupTier(new File(dir, FILE_NAMES[t]), WIDTHS[t]);
+	}
+
+	/**
+	 * Prida vzorek do vsech urovni
+	 * @param sample Vzorek
+	 */
+	synchronized public void add(Sample sample) {
+		int message = labels.intern(sample.message);
+		// Nova zprava je ulozena ihned, aby na ni ulozene sloty mohly odkazovat
+		labels.flush();
+
+		if (sessionStart < 0)
+			sessionStart = sample.time;
+		for (int t = 0; t < tiers.length; t++)
+			tiers[t].add(sample, message);
+	}
+
+	/**
+	 * Zapise rozpracovane sloty vsech urovni a nove zpravy (napr. pri
+	 * ukonceni sberu)
+	 * @return true v pripade uspechu, jinak false
+	 */
+	synchronized public boolean flush() {
+		boolean result = labels.flush();
+
+		for (int t = 0; t < tiers.length; t++)
+			result &= tiers[t].flush();
+
+		return result;
+	}
+
+	/**
+	 * Vrati celkovou velikost souboru urovni a slovniku zprav
+	 * @return Velikost (B)
+	 */
+	public long getStorageUsed() {
+		long result = new File(dir, LABELS_FILE_NAME).length();
+
+		for (int t = 0; t < FILE_NAMES.length; t++)
+			result += new File(dir, FILE_NAMES[t]).length();
+
+		return result;
+	}
+
+	/**
+	 * Vrati pocet vzorku, ktere nebylo mozne zapsat do nektere urovne
+	 * (viz RollupTier.getDropped())
+	 * @return Soucet za vsechny urovne
+	 */
+	public long getDropped() {
+		long result = 0;
+
+		for (int t = 0; t < tiers.length; t++)
+			result += tiers[t].getDropped();
+
+		return result;
+	}
+
+	/**
+	 * Vrati zpravu podle identifikatoru ve slotu
+	 * @param id Identifikator zpravy (RollupSlot.message)
+	 * @return Zprava
+	 */
+	public String getLabel(int id) {
+		return labels.getLabel(id);
+	}
+
+	/**
+	 * Projde souhrny zadaneho casoveho rozsahu v nejjemnejsi urovni, ve ktere
+	 * rozsah obsahuje nejvyse maxPoints slotu. Pokud se nevejde ani do
+	 * nejhrubsi urovne, je pouzita nejhrubsi uroven. Samotne vzorky jsou
+	 * pouzity jen pro rozsah v ramci aktualniho sberu.
+	 * @param from Zacatek rozsahu (ms)
+	 * @param to Konec rozsahu (ms)
+	 * @param maxPoints Nejvyssi pozadovany pocet bodu
+	 * @param visitor Zpracovani slotu
+	 * @return Delka slotu pouzite urovne (ms), interval mezi vzorky pro
+	 * samotne vzorky nebo -1 pri chybe cteni
+	 */
+	public long query(final long from, final long to, int maxPoints, final SlotVisitor visitor) {
+		long start;
+
+		synchronized (this) {
+			start = sessionStart;
+		}
+
+		if ((start >= 0) && (from >= start) && (((to - from) / interval + 1) <= maxPoints)) {
+			final RollupSlot slot = new RollupSlot();
+
+			boolean ok = store.scan(new SampleStore.ChunkVisitor() {
+				public void visit(SampleStore.Chunk chunk) {
+					for (int i = 0; i < chunk.size; i++) {
+						if ((chunk.time[i] < from) || (chunk.time[i] > to))
+							continue;
+						fill(slot, chunk, i);
+						visitor.visit(slot);
+					}
+				}
+			});
+
+			return ok ? interval : -1;
+		}
+
+		RollupTier tier = tiers[tiers.length - 1];
+		for (int t = 0; t < tiers.length; t++) {
+			if ((tiers[t].indexOf(to) - tiers[t].indexOf(from) + 1) <= maxPoints) {
+				tier = tiers[t];
+				break;
+			}
+		}
+
+		return tier.query(from, to, visitor) ? tier.getWidth() : -1;
+	}
+
+	/**
+	 * Vyplni slot jednim vzorkem z bloku uloziste
+	 */
+	private void fill(RollupSlot slot, SampleStore.Chunk chunk, int i) {
+		slot.first = chunk.time[i];
+		slot.last = chunk.time[i];
+		slot.count = 1;
+		slot.located = ((chunk.latitude[i] != 0.0) || (chunk.longitude[i] != 0.0)) ? 1 : 0;
+		set(slot, RollupSlot.LATITUDE, chunk.latitude[i]);
+		set(slot, RollupSlot.LONGITUDE, chunk.longitude[i]);
+		set(slot, RollupSlot.APP_COUNT, chunk.appCount[i]);
+		set(slot, RollupSlot.MOTION, chunk.motion[i]);
+		set(slot, RollupSlot.LIGHT, chunk.light[i]);
+		slot.profile = chunk.profile[i];
+		slot.dayPart = chunk.dayPart[i];
+		slot.screen = chunk.screen[i];
+		slot.headset = chunk.headset[i];
+		slot.call = chunk.call[i];
+		slot.place = chunk.place[i];
+		// Zpravy vzorku byly do slovniku pridany v add(), dotaz slovnik nemeni
+		slot.message = labels.getId(store.getMessage(chunk.message[i]));
+	}
+
+	/**
+	 * Nastavi prumer, minimum i maximum ciselneho sloupce na jednu hodnotu
+	 */
+	private static void set(RollupSlot slot, int column, float value) {
+		slot.mean[column] = value;
+		slot.min[column] = value;
+		slot.max[column] = value;
+	}
+
+}
@@ -0,0 +1,212 @@
+package cz.collector;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Souhrn vzorku jednoho casoveho useku (slotu) urovne souhrnu (viz
+ * RollupTier). Pro ciselne sloupce obsahuje prumer, minimum a maximum, pro
+ * vyctove sloupce nejcastejsi hodnotu. Poloha je souhrnem jen vzorku
+ * s polohou (sirka a delka 0 znamenaji, ze poloha nebyla zjistena, viz
+ * PlaceDetector). V souboru ma slot pevnou velikost
+ * SIZE, takze pozice slotu je dana jeho casem. Objekt je urcen
+ * k opakovanemu pouziti.
+ * @author Lukas Ambroz
+ */
+public class RollupSlot {
+
+	/** Velikost slotu v souboru (3 bajty jsou rezervovany) */
+	public static final int SIZE = 100;
+
+	/** Poradi ciselnych sloupcu v polich mean, min a max */
+	public static final int LATITUDE = 0;
+	public static final int LONGITUDE = 1;
+	public static final int APP_COUNT = 2;
+	public static final int MOTION = 3;
+	public static final int LIGHT = 4;
+	public static final int NUMERIC_COUNT = 5;
+
+	/** Cas prvniho vzorku (ms) */
+	public long first;
+	/** Cas posledniho vzorku (ms) */
+	public long last;
+	/** Pocet vzorku (0 pro prazdny slot) */
+	public int count;
+	/** Pocet vzorku s polohou (prumer polohy je vazen timto poctem) */
+	public int located;
+	/** Prumery ciselnych sloupcu */
+	public final float[] mean = new float[NUMERIC_COUNT];
+	/** Minima ciselnych sloupcu */
+	public final float[] min = new float[NUMERIC_COUNT];
+	/** Maxima ciselnych sloupcu */
+	public final float[] max = new float[NUMERIC_COUNT];
+	/** Nejcastejsi zvukovy profil (viz Sample.PROFILES) */
+	public byte profile;
+	/** Nejcastejsi cast dne (viz Sample.DAY_PARTS) */
+	public byte dayPart;
+	/** Nejcastejsi stav obrazovky (viz Sample.SCREEN_STATES) */
+	public byte screen;
+	/** Nejcastejsi priznak sluchatek (viz Sample.YES_NO) */
+	public byte headset;
+	/** Nejcastejsi priznak hovoru (viz Sample.YES_NO) */
+	public byte call;
+	/** Nejcastejsi misto (viz PlaceDetector) */
+	public int place;
+	/** Nejcastejsi zprava (viz LabelDictionary) */
+	public int message;
+
+	/**
+	 * Vyprazdni slot
+	 */
+	public void reset() {
+		first = 0;
+		last = 0;
+		count = 0;
+		located = 0;
+		for (int i = 0; i < NUMERIC_COUNT; i++) {
+			mean[i] = 0.0F;
+			min[i] = 0.0F;
+			max[i] = 0.0F;
+		}
+		profile = 0;
+		dayPart = 0;
+		screen = 0;
+		headset = 0;
+		call = 0;
+		place = 0;
+		message = 0;
+	}
+
+	/**
+	 * Prida do slotu jiny slot stejneho useku (napr. z predchoziho sberu).
+	 * Prumery jsou vazeny poctem vzorku (poloha poctem vzorku s polohou),
+	 * u vyctovych sloupcu zustane hodnota slotu s vice vzorky.
+	 * @param other Pridavany slot
+	 */
+	public void merge(RollupSlot other) {
+		if (other.count == 0)
+			return;
+		if (count == 0) {
+			copyFrom(other);
+			return;
+		}
+
+		int total = count + other.count;
+		for (int i = 0; i < NUMERIC_COUNT; i++) {
+			if ((i == LATITUDE) || (i == LONGITUDE))
+				mergeColumn(other, i, located, other.located);
+			else
+				mergeColumn(other, i, count, other.count);
+		}
+
+		if (other.count > count) {
+			profile = other.profile;
+			dayPart = other.dayPart;
+			screen = other.screen;
+			headset = other.headset;
+			call = other.call;
+			place = other.place;
+			message = other.message;
+		}
+
+		first = Math.min(first, other.first);
+		last = Math.max(last, other.last);
+		count = total;
+		located += other.located;
+	}
+
+	/**
+	 * Spoji hodnoty ciselneho sloupce, prumer je vazen zadanymi pocty
+	 */
+	private void mergeColumn(RollupSlot other, int i, int n, int otherN) {
+		if (otherN == 0)
+			return;
+		if (n == 0) {
+			mean[i] = other.mean[i];
+			min[i] = other.min[i];
+			max[i] = other.max[i];
+			return;
+		}
+
+		mean[i] = (float) (((double) mean[i] * n + (double) other.mean[i] * otherN) / (n + otherN));
+		min[i] = Math.min(min[i], other.min[i]);
+		max[i] = Math.max(max[i], other.max[i]);
+	}
+
+	/**
+	 * Zkopiruje vsechny hodnoty z jineho slotu
+	 * @param other Zdrojovy slot
+	 */
+	public void copyFrom(RollupSlot other) {
+		first = other.first;
+		last = other.last;
+		count = other.count;
+		located = other.located;
+		System.arraycopy(other.mean, 0, mean, 0, NUMERIC_COUNT);
+		System.arraycopy(other.min, 0, min, 0, NUMERIC_COUNT);
+		System.arraycopy(other.max, 0, max, 0, NUMERIC_COUNT);
+		profile = other.profile;
+		dayPart = other.dayPart;
+		screen = other.screen;
+		headset = other.headset;
+		call = other.call;
+		place = other.place;
+		message = other.message;
+	}
+
+	/**
+	 * Nacte slot z bufferu od jeho aktualni pozice
+	 * @param buf Buffer, pozice se posune o SIZE
+	 */
+	public void read(ByteBuffer buf) {
+		int start = buf.position();
+
+		first = buf.getLong();
+		last = buf.getLong();
+		count = buf.getInt();
+		located = buf.getInt();
+		for (int i = 0; i < NUMERIC_COUNT; i++) {
+			mean[i] = buf.getFloat();
+			min[i] = buf.getFloat();
+			max[i] = buf.getFloat();
+		}
+		profile = buf.get();
+		dayPart = buf.get();
+		screen = buf.get();
+		headset = buf.get();
+		call = buf.get();
+		place = buf.getInt();
+		message = buf.getInt();
+
+		buf.position(start + SIZE);
+	}
+
+	/**
+	 * Zapise slot do bufferu od jeho aktualni pozice
+	 * @param buf Buffer, pozice se posune o SIZE
+	 */
+	public void write(ByteBuffer buf) {
+		int start = buf.position();
+
+		buf.putLong(first);
+		buf.putLong(last);
+		buf.putInt(count);
+		buf.putInt(located);
+		for (int i = 0; i < NUMERIC_COUNT; i++) {
+			buf.putFloat(mean[i]);
+			buf.putFloat(min[i]);
+			buf.putFloat(max[i]);
+		}
+		buf.put(profile);
+		buf.put(dayPart);
+		buf.put(screen);
+		buf.put(headset);
+		buf.put(call);
+		buf.putInt(place);
+		buf.putInt(message);
+
+		// Rezervovane bajty
+		while (buf.position() < start + SIZE)
+			buf.put((byte) 0);
+	}
+
+}
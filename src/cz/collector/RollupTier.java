@@ -0,0 +1,495 @@
+package cz.collector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Jedna uroven souhrnu vzorku (viz RollupPyramid). Cas je rozdelen na useky
+ * (sloty) pevne delky, vzorky aktualniho slotu jsou prubezne scitany a pri
+ * prechodu do dalsiho slotu je souhrn zapsan do souboru. Sloty kratsi nez
+ * den jsou zarovnany na UTC, aby se jejich index pri zmene letniho casu
+ * nevracel, denni sloty jsou zarovnany na mistni pulnoc. Soubor zacina hlavickou HEADER_SIZE bajtu (magicke cislo, verze,
+ * velikost slotu, delka slotu a index prvniho slotu), za kterou nasleduji
+ * sloty velikosti RollupSlot.SIZE v poradi podle casu. Pozice slotu je tedy
+ * dana jeho casem a dotaz na casovy rozsah cte jen odpovidajici cast
+ * souboru. Sloty bez vzorku maji nulovy pocet. Slot pred prvnim slotem
+ * souboru (napr. po posunuti hodin zpet) je pridan posunutim souboru, jen
+ * pokud by soubor nenarostl o vice nez MAX_SHIFT bajtu, jinak jsou jeho
+ * vzorky zapocitany do getDropped().
+ * @author Lukas Ambroz
+ */
+public class RollupTier {
+
+	/** Velikost hlavicky souboru */
+	public static final int HEADER_SIZE = 32;
+	/** Magicke cislo souboru ("ROLL") */
+	private static final int MAGIC = 0x524F4C4C;
+	/** Verze formatu souboru */
+	private static final int VERSION = 3;
+	/** Pocet slotu nactenych najednou pri dotazu */
+	private static final int READ_SLOTS = 64;
+	/** Nejvetsi zvetseni souboru pri pridani slotu pred prvni slot (1 MB) */
+	private static final long MAX_SHIFT = 1 << 20;
+	/** Delka dne (ms) */
+	private static final long DAY = 86400000L;
+
+	/** Delka slotu (ms) */
+	private final long width;
+	/** Soubor slotu */
+	private final File file;
+	/** Casova zona pro zarovnani slotu */
+	private final TimeZone zone = TimeZone.getDefault();
+	/** Priznak zarovnani slotu na mistni cas (jen sloty delky alespon den) */
+	private final boolean local;
+	/** Index prvniho slotu v souboru (-1, pokud soubor neexistuje) */
+	private long base = -1;
+
+	/** Index aktualniho slotu (-1, pokud dosud nebyl pridan vzorek) */
+	private long index = -1;
+	/** Pocet vzorku, ktere nebylo mozne zapsat do souboru */
+	private long dropped = 0;
+	/** Cas prvniho vzorku aktualniho slotu */
+	private long first;
+	/** Cas posledniho vzorku aktualniho slotu */
+	private long last;
+	/** Pocet vzorku aktualniho slotu */
+	private int count = 0;
+	/** Pocet vzorku aktualniho slotu s polohou */
+	private int located = 0;
+	/** Soucty ciselnych sloupcu */
+	private final double[] sum = new double[RollupSlot.NUMERIC_COUNT];
+	/** Minima ciselnych sloupcu */
+	private final float[] min = new float[RollupSlot.NUMERIC_COUNT];
+	/** Maxima ciselnych sloupcu */
+	private final float[] max = new float[RollupSlot.NUMERIC_COUNT];
+	/** Cetnosti hodnot vyctovych sloupcu */
+	private final int[] profiles = new int[Sample.PROFILES.length];
+	private final int[] dayParts = new int[Sample.DAY_PARTS.length];
+	private final int[] screens = new int[Sample.SCREEN_STATES.length];
+	private final int[] headsets = new int[Sample.YES_NO.length];
+	private final int[] calls = new int[Sample.YES_NO.length];
+	/** Odhad nejcastejsiho mista */
+	private final Dominant places = new Dominant();
+	/** Odhad nejcastejsi zpravy */
+	private final Dominant messages = new Dominant();
+
+	/** Slot pro zapis a cteni */
+	private final RollupSlot slot = new RollupSlot();
+	/** Slot nacteny ze souboru */
+	private final RollupSlot stored = new RollupSlot();
+	/** Buffer pro zapis a cteni slotu */
+	private final ByteBuffer buf = ByteBuffer.allocate(READ_SLOTS * RollupSlot.SIZE);
+
+	/**
+	 * Odhad nejcastejsi hodnoty s konstantni pameti (algoritmus Misra-Gries).
+	 * Hodnota, ktera tvori vice nez petinu vzorku, je nalezena vzdy.
+	 */
+	private static class Dominant {
+		/** Pocet sledovanych kandidatu */
+		private static final int SIZE = 4;
+		/** Kandidati */
+		private final int[] values = new int[SIZE];
+		/** Citace kandidatu (0 oznacuje volne misto) */
+		private final int[] counts = new int[SIZE];
+
+		void reset() {
+			for (int i = 0; i < SIZE; i++)
+				counts[i] = 0;
+		}
+
+		void add(int value) {
+			int free = -1;
+
+			for (int i = 0; i < SIZE; i++) {
+				if ((counts[i] > 0) && (values[i] == value)) {
+					counts[i]++;
+					return;
+				}
+				if ((counts[i] == 0) && (free < 0))
+					free = i;
+			}
+
+			if (free >= 0) {
+				values[free] = value;
+				counts[free] = 1;
+				return;
+			}
+
+			for (int i = 0; i < SIZE; i++)
+				counts[i]--;
+		}
+
+		int get() {
+			int best = -1;
+
+			for (int i = 0; i < SIZE; i++) {
+				if ((counts[i] > 0) && ((best < 0) || (counts[i] > counts[best])))
+					best = i;
+			}
+
+			return (best < 0) ? 0 : values[best];
+		}
+	}
+
+	/**
+	 * Konstruktor nacte hlavicku drive vytvoreneho souboru
+	 * @param file Soubor slotu
+	 * @param width Delka slotu (ms)
+	 */
+	public RollupTier(File file, long width) {
+		this.file = file;
+		this.width = width;
+		local = (width >= DAY);
+
+		readHeader();
+	}
+
+	/**
+	 * Vrati delku slotu
+	 * @return Delka slotu (ms)
+	 */
+	public long getWidth() {
+		return width;
+	}
+
+	/**
+	 * Vrati index slotu, do ktereho patri zadany cas
+	 * @param time Cas (ms)
+	 * @return Index slotu
+	 */
+	public long indexOf(long time) {
+		if (!local)
+			return time / width;
+
+		return (time + zone.getOffset(time)) / width;
+	}
+
+	/**
+	 * Vrati pocet vzorku, ktere nebylo mozne zapsat do souboru (chyba zapisu
+	 * nebo slot prilis daleko pred prvnim slotem souboru)
+	 * @return Pocet vzorku
+	 */
+	synchronized public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Prida vzorek. Pokud vzorek patri do dalsiho slotu, je souhrn
+	 * aktualniho slotu zapsan do souboru.
+	 * @param sample Vzorek
+	 * @param message Identifikator zpravy vzorku (viz LabelDictionary)
+	 */
+	synchronized public void add(Sample sample, int message) {
+		long i = indexOf(sample.time);
+
+		if (i != index) {
+			if (count > 0)
+				store();
+			index = i;
+		}
+
+		if (count == 0)
+			first = sample.time;
+		last = sample.time;
+		count++;
+
+		// Vzorky bez polohy (0, 0) se do souhrnu polohy nezapocitavaji
+		if ((sample.latitude != 0.0) || (sample.longitude != 0.0)) {
+			located++;
+			add(RollupSlot.LATITUDE, (float) sample.latitude, located);
+			add(RollupSlot.LONGITUDE, (float) sample.longitude, located);
+		}
+		add(RollupSlot.APP_COUNT, sample.appCount, count);
+		add(RollupSlot.MOTION, sample.motion, count);
+		add(RollupSlot.LIGHT, sample.light, count);
+
+		profiles[sample.profile]++;
+		dayParts[sample.dayPart]++;
+		screens[sample.screen]++;
+		headsets[sample.headset]++;
+		calls[sample.call]++;
+		places.add(sample.place);
+		messages.add(message);
+	}
+
+	/**
+	 * Zapise souhrn aktualniho slotu do souboru, i kdyz slot dosud neskoncil.
+	 * Dalsi vzorky stejneho slotu budou pri zapisu k ulozenemu souhrnu
+	 * pricteny.
+	 * @return true v pripade uspechu, jinak false
+	 */
+	synchronized public boolean flush() {
+		if (count == 0)
+			return true;
+
+		return store();
+	}
+
+	/**
+	 * Projde neprazdne sloty zadaneho casoveho rozsahu v poradi podle casu.
+	 * Aktualni slot je zahrnut vcetne dosud nezapsanych vzorku. Predavany
+	 * slot je pri kazdem volani prepsan.
+	 * @param from Zacatek rozsahu (ms)
+	 * @param to Konec rozsahu (ms)
+	 * @param visitor Zpracovani slotu
+	 * @return true v pripade uspechu, false pri chybe cteni
+	 */
+	synchronized public boolean query(long from, long to, RollupPyramid.SlotVisitor visitor) {
+		long iFrom = indexOf(from);
+		long iTo = indexOf(to);
+		boolean current = (count > 0) && (index >= iFrom) && (index <= iTo);
+		RandomAccessFile raf = null;
+
+		try {
+			if ((base >= 0) && file.exists()) {
+				raf = new RandomAccessFile(file, "r");
+				long end = base + (raf.length() - HEADER_SIZE) / RollupSlot.SIZE - 1;
+				long i = Math.max(iFrom, base);
+				long limit = Math.min(iTo, end);
+
+				raf.seek(HEADER_SIZE + (i - base) * RollupSlot.SIZE);
+				while (i <= limit) {
+					int n = (int) Math.min(READ_SLOTS, limit - i + 1);
+					raf.readFully(buf.array(), 0, n * RollupSlot.SIZE);
+					buf.clear();
+
+					for (int k = 0; k < n; k++, i++) {
+						stored.read(buf);
+						if (current && (i == index)) {
+							// Aktualni slot doplneny o nezapsane vzorky
+							fill(slot);
+							stored.merge(slot);
+							current = false;
+						}
+						if (stored.count > 0)
+							visitor.visit(stored);
+					}
+				}
+			}
+		} catch (IOException ioe) {
+			return false;
+		} finally {
+			close(raf);
+		}
+
+		if (current) {
+			fill(slot);
+			visitor.visit(slot);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Zapise souhrn aktualniho slotu do souboru, pripadne ho pricte ke
+	 * slotu ulozenemu drive, a vynuluje soucty
+	 */
+	private boolean store() {
+		fill(slot);
+		reset();
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "rw");
+			if ((base < 0) || (raf.length() < HEADER_SIZE)) {
+				base = index;
+				raf.setLength(0);
+				writeHeader(raf);
+			}
+
+			// Slot pred prvnim slotem (napr. po posunuti hodin zpet)
+			if (index < base) {
+				if ((base - index) * RollupSlot.SIZE > MAX_SHIFT) {
+					dropped += slot.count;
+					return false;
+				}
+				shift(raf, base - index);
+			}
+
+			long pos = HEADER_SIZE + (index - base) * RollupSlot.SIZE;
+			if (pos + RollupSlot.SIZE <= raf.length()) {
+				raf.seek(pos);
+				raf.readFully(buf.array(), 0, RollupSlot.SIZE);
+				buf.clear();
+				stored.read(buf);
+				slot.merge(stored);
+			}
+
+			buf.clear();
+			slot.write(buf);
+			raf.seek(pos);
+			raf.write(buf.array(), 0, RollupSlot.SIZE);
+		} catch (IOException ioe) {
+			dropped += slot.count;
+			return false;
+		} finally {
+			close(raf);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Posune sloty souboru o zadany pocet slotu dal a na uvolnene misto
+	 * zapise prazdne sloty, prvni slot souboru pak ma index base - slots
+	 * @param raf Soubor otevreny pro zapis
+	 * @param slots Pocet pridanych slotu
+	 */
+	private void shift(RandomAccessFile raf, long slots) throws IOException {
+		byte[] data = buf.array();
+		long offset = slots * RollupSlot.SIZE;
+		long pos = raf.length() - HEADER_SIZE;
+
+		// Kopirovani od konce, aby nebyla prepsana dosud nepresunuta data
+		while (pos > 0) {
+			int n = (int) Math.min(data.length, pos);
+			pos -= n;
+			raf.seek(HEADER_SIZE + pos);
+			raf.readFully(data, 0, n);
+			raf.seek(HEADER_SIZE + pos + offset);
+			raf.write(data, 0, n);
+		}
+
+		Arrays.fill(data, (byte) 0);
+		for (pos = 0; pos < offset; pos += data.length) {
+			raf.seek(HEADER_SIZE + pos);
+			raf.write(data, 0, (int) Math.min(data.length, offset - pos));
+		}
+
+		base -= slots;
+		raf.seek(0);
+		writeHeader(raf);
+	}
+
+	/**
+	 * Vyplni slot souhrnem dosud pridanych vzorku aktualniho slotu
+	 */
+	private void fill(RollupSlot slot) {
+		slot.reset();
+		if (count == 0)
+			return;
+
+		slot.first = first;
+		slot.last = last;
+		slot.count = count;
+		slot.located = located;
+		for (int i = 0; i < RollupSlot.NUMERIC_COUNT; i++) {
+			int n = ((i == RollupSlot.LATITUDE) || (i == RollupSlot.LONGITUDE)) ? located : count;
+			if (n == 0)
+				continue;
+			slot.mean[i] = (float) (sum[i] / n);
+			slot.min[i] = min[i];
+			slot.max[i] = max[i];
+		}
+		slot.profile = mode(profiles);
+		slot.dayPart = mode(dayParts);
+		slot.screen = mode(screens);
+		slot.headset = mode(headsets);
+		slot.call = mode(calls);
+		slot.place = places.get();
+		slot.message = messages.get();
+	}
+
+	/**
+	 * Vynuluje soucty aktualniho slotu
+	 */
+	private void reset() {
+		count = 0;
+		located = 0;
+		for (int i = 0; i < RollupSlot.NUMERIC_COUNT; i++)
+			sum[i] = 0.0;
+		clear(profiles);
+		clear(dayParts);
+		clear(screens);
+		clear(headsets);
+		clear(calls);
+		places.reset();
+		messages.reset();
+	}
+
+	/**
+	 * Pricte hodnotu ciselneho sloupce
+	 * @param n Pocet hodnot sloupce vcetne pridavane
+	 */
+	private void add(int column, float value, int n) {
+		sum[column] += value;
+		if ((n == 1) || (value < min[column]))
+			min[column] = value;
+		if ((n == 1) || (value > max[column]))
+			max[column] = value;
+	}
+
+	/**
+	 * Nacte index prvniho slotu z hlavicky souboru, soubor jineho formatu je
+	 * prepsan pri prvnim zapisu
+	 */
+	private void readHeader() {
+		if ((file == null) || !file.exists())
+			return;
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			if ((raf.readInt() == MAGIC) && (raf.readInt() == VERSION)
+					&& (raf.readInt() == RollupSlot.SIZE) && (raf.readLong() == width))
+				base = raf.readLong();
+		} catch (IOException ioe) {
+			// Soubor bude vytvoren znovu
+		} finally {
+			close(raf);
+		}
+	}
+
+	/**
+	 * Zapise hlavicku souboru na aktualni pozici
+	 */
+	private void writeHeader(RandomAccessFile raf) throws IOException {
+		raf.writeInt(MAGIC);
+		raf.writeInt(VERSION);
+		raf.writeInt(RollupSlot.SIZE);
+		raf.writeLong(width);
+		raf.writeLong(base);
+		raf.writeInt(0);
+	}
+
+	/**
+	 * Vrati kod nejcastejsi hodnoty podle cetnosti
+	 */
+	private static byte mode(int[] counts) {
+		int best = 0;
+
+		for (int i = 1; i < counts.length; i++) {
+			if (counts[i] > counts[best])
+				best = i;
+		}
+
+		return (byte) best;
+	}
+
+	/**
+	 * Vynuluje pole cetnosti
+	 */
+	private static void clear(int[] counts) {
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = 0;
+	}
+
+	/**
+	 * Zavre soubor bez vyhozeni vyjimky
+	 */
+	private static void close(RandomAccessFile raf) {
+		if (raf == null)
+			return;
+
+		try {
+			raf.close();
+		} catch (IOException ioe) {
+			// Jiz zapsano
+		}
+	}
+
+}
@@ -0,0 +1,445 @@
+package cz.collector;
+
+/**
+ * Hodnoty nactene ze senzoru v jednom kroku sberu. Vyctove hodnoty (profil,
+ * cast dne apod.) jsou drzeny jako kody do prislusnych tabulek retezcu, aby
+ * je bylo mozne ukladat bez prevodu na retezce. Objekt je urcen k opakovanemu
+ * pouziti, pri kazdem nacteni jsou prepsany vsechny hodnoty.
+ * @author Lukas Ambroz
+ */
+public class Sample {
+
+	/** Zvukove profily */
+	public static final String[] PROFILES = { "normal", "vibrate", "silent" };
+	/** Casti dne */
+	public static final String[] DAY_PARTS = { "morning", "forenoon", "afternoon", "evening", "night" };
+	/** Dny v tydnu (poradi odpovida android.text.format.Time) */
+	public static final String[] DAYS = { "sun", "mon", "tue", "wed", "thu", "fri", "sat" };
+	/** Hodnoty ano/ne */
+	public static final String[] YES_NO = { "no", "yes" };
+	/** Stavy obrazovky */
+	public static final String[] SCREEN_STATES = { "off", "on" };
+
+	/** Kod zvukoveho profilu normal */
+	public static final byte PROFILE_NORMAL = 0;
+	/** Kod zvukoveho profilu vibrate */
+	public static final byte PROFILE_VIBRATE = 1;
+	/** Kod zvukoveho profilu silent */
+	public static final byte PROFILE_SILENT = 2;
+	/** Kod hodnoty ne */
+	public static final byte NO = 0;
+	/** Kod hodnoty ano */
+	public static final byte YES = 1;
+
+	/** Poradi sloupcu v radku CSV (viz toCsvLine() a Schema.COLUMNS) */
+	public static final int COL_TIME = 0;
+	public static final int COL_LATITUDE = 1;
+	public static final int COL_LONGITUDE = 2;
+	public static final int COL_PROFILE = 3;
+	public static final int COL_HOUR = 4;
+	public static final int COL_DAY_PART = 5;
+	public static final int COL_DAY = 6;
+	public static final int COL_WEEKEND = 7;
+	public static final int COL_SCREEN = 8;
+	public static final int COL_APP_COUNT = 9;
+	public static final int COL_HEADSET = 10;
+	public static final int COL_CALL = 11;
+	public static final int COL_AP_MAC = 12;
+	public static final int COL_PLACE = 13;
+	public static final int COL_WIFI = 14;
+	public static final int COL_MOTION = 15;
+	public static final int COL_MOTION_MIN = 16;
+	public static final int COL_MOTION_MAX = 17;
+	public static final int COL_MOTION_STD = 18;
+	public static final int COL_MOTION_MEDIAN = 19;
+	public static final int COL_MOTION_P90 = 20;
+	public static final int COL_LIGHT = 21;
+	public static final int COL_LIGHT_MIN = 22;
+	public static final int COL_LIGHT_MAX = 23;
+	public static final int COL_LIGHT_STD = 24;
+	public static final int COL_LIGHT_MEDIAN = 25;
+	public static final int COL_LIGHT_P90 = 26;
+	public static final int COL_MESSAGE = 27;
+	/** Pocet sloupcu v radku CSV */
+	public static final int COLUMN_COUNT = 28;
+
+	/** Meritko zaokrouhleni statistik akcelerace (0.01 m/s2) */
+	public static final float MOTION_SCALE = 100.0F;
+	/** Meritko zaokrouhleni statistik svetla (1 lx) */
+	public static final float LIGHT_SCALE = 1.0F;
+
+	/** Cas nacteni (ms od 1.1.1970) */
+	public long time;
+	/** Zemepisna sirka */
+	public double latitude;
+	/** Zemepisna delka */
+	public double longitude;
+	/** Kod zvukoveho profilu */
+	public byte profile;
+	/** Hodina dne */
+	public int hour;
+	/** Kod casti dne */
+	public byte dayPart;
+	/** Kod dne v tydnu */
+	public byte day;
+	/** Kod priznaku vikendu */
+	public byte weekend;
+	/** Kod stavu obrazovky */
+	public byte screen;
+	/** Pocet bezicich aplikaci */
+	public int appCount;
+	/** Kod priznaku pripojenych sluchatek */
+	public byte headset;
+	/** Kod priznaku probihajiciho hovoru */
+	public byte call;
+	/** MAC adresa pripojeneho AP jako 48bitove cislo (0, pokud neni pripojen) */
+	public long apMac;
+	/** Identifikator mista */
+	public int place;
+	/** Otisk okolnich wifi siti */
+	public String wifi = "";
+	/** Prumerna akcelerace */
+	public float motion;
+	/** Nejmensi akcelerace */
+	public float motionMin;
+	/** Nejvetsi akcelerace */
+	public float motionMax;
+	/** Smerodatna odchylka akcelerace */
+	public float motionStd;
+	/** Median akcelerace (odhad) */
+	public float motionMedian;
+	/** 90% kvantil akcelerace (odhad) */
+	public float motionP90;
+	/** Casove vazeny prumer urovne svetla */
+	public float light;
+	/** Nejmensi uroven svetla (NaN, pokud v okne neprisla zadna hodnota) */
+	public float lightMin;
+	/** Nejvetsi uroven svetla (NaN, pokud v okne neprisla zadna hodnota) */
+	public float lightMax;
+	/** Smerodatna odchylka urovne svetla (NaN, pokud v okne neprisla zadna hodnota) */
+	public float lightStd;
+	/** Median urovne svetla (odhad, NaN, pokud v okne neprisla zadna hodnota) */
+	public float lightMedian;
+	/** 90% kvantil urovne svetla (odhad, NaN, pokud v okne neprisla zadna hodnota) */
+	public float lightP90;
+	/** Zprava, pro kterou probiha sber */
+	public String message = "";
+
+	/**
+	 * Vrati kod casti dne pro zadanou hodinu
+	 * @param hour Hodina
+	 * @return Kod casti dne
+	 */
+	public static byte dayPartOf(int hour) {
+		if ((hour >= 6) && (hour < 10))
+			return 0;
+		if ((hour >= 10) && (hour < 12))
+			return 1;
+		if ((hour >= 12) && (hour < 18))
+			return 2;
+		if ((hour >= 18) && (hour < 22))
+			return 3;
+
+		return 4;
+	}
+
+	/**
+	 * Vrati kod retezce v tabulce
+	 * @param table Tabulka retezcu
+	 * @param value Hledany retezec
+	 * @return Kod retezce nebo -1, pokud v tabulce neni
+	 */
+	public static byte codeOf(String[] table, String value) {
+		for (byte i = 0; i < table.length; i++) {
+			if (table[i].equals(value))
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Prevede 48bitove cislo na MAC adresu ve tvaru aa:bb:cc:dd:ee:ff
+	 * @param mac Adresa jako cislo
+	 * @return MAC adresa nebo prazdny retezec pro 0
+	 */
+	public static String longToMac(long mac) {
+		if (mac == 0)
+			return "";
+
+		char[] result = new char[17];
+		for (int i = 0; i < 6; i++) {
+			int b = (int) (mac >>> (40 - 8 * i)) & 0xFF;
+
+			result[i * 3] = Character.forDigit(b >>> 4, 16);
+			result[i * 3 + 1] = Character.forDigit(b & 0x0F, 16);
+			if (i < 5)
+				result[i * 3 + 2] = ':';
+		}
+
+		return new String(result);
+	}
+
+	/**
+	 * Vrati hodnoty jako jeden radek ve formatu CSV
+	 * @return Radek ve formatu CSV
+	 */
+	public String toCsvLine() {
+		StringBuilder sb = new StringBuilder(128);
+
+		appendCsvLine(sb);
+
+		return sb.toString();
+	}
+
+	/**
+	 * Prida hodnoty jako jeden radek ve formatu CSV
+	 * @param sb Cil
+	 */
+	public void appendCsvLine(StringBuilder sb) {
+		for (int col = 0; col < COLUMN_COUNT; col++) {
+			if (col > 0)
+				sb.append(',');
+			appendColumn(sb, col);
+		}
+	}
+
+	/**
+	 * Prida hodnotu jednoho sloupce ve tvaru pro CSV
+	 * @param sb Cil
+	 * @param col Sloupec (COL_*)
+	 */
+	public void appendColumn(StringBuilder sb, int col) {
+		switch (col) {
+		case COL_TIME:
+			sb.append(time);
+			break;
+		case COL_LATITUDE:
+			sb.append(latitude);
+			break;
+		case COL_LONGITUDE:
+			sb.append(longitude);
+			break;
+		case COL_PROFILE:
+			sb.append(PROFILES[profile]);
+			break;
+		case COL_HOUR:
+			sb.append(hour);
+			break;
+		case COL_DAY_PART:
+			sb.append(DAY_PARTS[dayPart]);
+			break;
+		case COL_DAY:
+			sb.append(DAYS[day]);
+			break;
+		case COL_WEEKEND:
+			sb.append(YES_NO[weekend]);
+			break;
+		case COL_SCREEN:
+			sb.append(SCREEN_STATES[screen]);
+			break;
+		case COL_APP_COUNT:
+			sb.append(appCount);
+			break;
+		case COL_HEADSET:
+			sb.append(YES_NO[headset]);
+			break;
+		case COL_CALL:
+			sb.append(YES_NO[call]);
+			break;
+		case COL_AP_MAC:
+			sb.append(longToMac(apMac));
+			break;
+		case COL_PLACE:
+			sb.append(place);
+			break;
+		case COL_WIFI:
+			sb.append(wifi);
+			break;
+		case COL_MOTION:
+			sb.append(motion);
+			break;
+		case COL_MOTION_MIN:
+			sb.append(motionMin);
+			break;
+		case COL_MOTION_MAX:
+			sb.append(motionMax);
+			break;
+		case COL_MOTION_STD:
+			sb.append(motionStd);
+			break;
+		case COL_MOTION_MEDIAN:
+			sb.append(motionMedian);
+			break;
+		case COL_MOTION_P90:
+			sb.append(motionP90);
+			break;
+		case COL_LIGHT:
+			sb.append(light);
+			break;
+		case COL_LIGHT_MIN:
+			appendOptional(sb, lightMin);
+			break;
+		case COL_LIGHT_MAX:
+			appendOptional(sb, lightMax);
+			break;
+		case COL_LIGHT_STD:
+			appendOptional(sb, lightStd);
+			break;
+		case COL_LIGHT_MEDIAN:
+			appendOptional(sb, lightMedian);
+			break;
+		case COL_LIGHT_P90:
+			appendOptional(sb, lightP90);
+			break;
+		case COL_MESSAGE:
+			sb.append(message);
+			break;
+		}
+	}
+
+	/**
+	 * Zaokrouhli statistiky akcelerace a svetla na MOTION_SCALE a LIGHT_SCALE.
+	 * Statistiky se pocitaji z kazdeho okna znovu, bez zaokrouhleni se proto
+	 * meni v kazdem radku a zmenove radky (viz DeltaEncoder) by je musely
+	 * uvadet vzdy. Zaokrouhleni je pod rozlisenim beznych senzoru.
+	 */
+	public void roundStats() {
+		motion = round(motion, MOTION_SCALE);
+		motionMin = round(motionMin, MOTION_SCALE);
+		motionMax = round(motionMax, MOTION_SCALE);
+		motionStd = round(motionStd, MOTION_SCALE);
+		motionMedian = round(motionMedian, MOTION_SCALE);
+		motionP90 = round(motionP90, MOTION_SCALE);
+		light = round(light, LIGHT_SCALE);
+		lightMin = round(lightMin, LIGHT_SCALE);
+		lightMax = round(lightMax, LIGHT_SCALE);
+		lightStd = round(lightStd, LIGHT_SCALE);
+		lightMedian = round(lightMedian, LIGHT_SCALE);
+		lightP90 = round(lightP90, LIGHT_SCALE);
+	}
+
+	/**
+	 * Zaokrouhli hodnotu na 1/scale (NaN zustava NaN)
+	 */
+	private static float round(float value, float scale) {
+		if (Float.isNaN(value) || Float.isInfinite(value))
+			return value;
+
+		return Math.round(value * scale) / scale;
+	}
+
+	/**
+	 * Prida hodnotu, ktera nemusi byt k dispozici (NaN je zapsano jako
+	 * prazdne pole)
+	 */
+	private static void appendOptional(StringBuilder sb, float value) {
+		if (!Float.isNaN(value))
+			sb.append(value);
+	}
+
+	/**
+	 * Porovna hodnotu jednoho sloupce s jinym vzorkem
+	 * @param other Porovnavany vzorek
+	 * @param col Sloupec (COL_*)
+	 * @return true, pokud je hodnota sloupce v obou vzorcich stejna
+	 */
+	public boolean sameColumn(Sample other, int col) {
+		switch (col) {
+		case COL_TIME:
+			return time == other.time;
+		case COL_LATITUDE:
+			return Double.doubleToLongBits(latitude) == Double.doubleToLongBits(other.latitude);
+		case COL_LONGITUDE:
+			return Double.doubleToLongBits(longitude) == Double.doubleToLongBits(other.longitude);
+		case COL_PROFILE:
+			return profile == other.profile;
+		case COL_HOUR:
+			return hour == other.hour;
+		case COL_DAY_PART:
+			return dayPart == other.dayPart;
+		case COL_DAY:
+			return day == other.day;
+		case COL_WEEKEND:
+			return weekend == other.weekend;
+		case COL_SCREEN:
+			return screen == other.screen;
+		case COL_APP_COUNT:
+			return appCount == other.appCount;
+		case COL_HEADSET:
+			return headset == other.headset;
+		case COL_CALL:
+			return call == other.call;
+		case COL_AP_MAC:
+			return apMac == other.apMac;
+		case COL_PLACE:
+			return place == other.place;
+		case COL_WIFI:
+			return wifi.equals(other.wifi);
+		case COL_MOTION:
+			return Float.floatToIntBits(motion) == Float.floatToIntBits(other.motion);
+		case COL_MOTION_MIN:
+			return Float.floatToIntBits(motionMin) == Float.floatToIntBits(other.motionMin);
+		case COL_MOTION_MAX:
+			return Float.floatToIntBits(motionMax) == Float.floatToIntBits(other.motionMax);
+		case COL_MOTION_STD:
+			return Float.floatToIntBits(motionStd) == Float.floatToIntBits(other.motionStd);
+		case COL_MOTION_MEDIAN:
+			return Float.floatToIntBits(motionMedian) == Float.floatToIntBits(other.motionMedian);
+		case COL_MOTION_P90:
+			return Float.floatToIntBits(motionP90) == Float.floatToIntBits(other.motionP90);
+		case COL_LIGHT:
+			return Float.floatToIntBits(light) == Float.floatToIntBits(other.light);
+		case COL_LIGHT_MIN:
+			return Float.floatToIntBits(lightMin) == Float.floatToIntBits(other.lightMin);
+		case COL_LIGHT_MAX:
+			return Float.floatToIntBits(lightMax) == Float.floatToIntBits(other.lightMax);
+		case COL_LIGHT_STD:
+			return Float.floatToIntBits(lightStd) == Float.floatToIntBits(other.lightStd);
+		case COL_LIGHT_MEDIAN:
+			return Float.floatToIntBits(lightMedian) == Float.floatToIntBits(other.lightMedian);
+		case COL_LIGHT_P90:
+			return Float.floatToIntBits(lightP90) == Float.floatToIntBits(other.lightP90);
+		case COL_MESSAGE:
+			return message.equals(other.message);
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Zkopiruje vsechny hodnoty z jineho vzorku
+	 * @param other Zdrojovy vzorek
+	 */
+	public void copyFrom(Sample other) {
+		time = other.time;
+		latitude = other.latitude;
+		longitude = other.longitude;
+		profile = other.profile;
+		hour = other.hour;
+		dayPart = other.dayPart;
+		day = other.day;
+		weekend = other.weekend;
+		screen = other.screen;
+		appCount = other.appCount;
+		headset = other.headset;
+		call = other.call;
+		apMac = other.apMac;
+		place = other.place;
+		wifi = other.wifi;
+		motion = other.motion;
+		motionMin = other.motionMin;
+		motionMax = other.motionMax;
+		motionStd = other.motionStd;
+		motionMedian = other.motionMedian;
+		motionP90 = other.motionP90;
+		light = other.light;
+		lightMin = other.lightMin;
+		lightMax = other.lightMax;
+		lightStd = other.lightStd;
+		lightMedian = other.lightMedian;
+		lightP90 = other.lightP90;
+		message = other.message;
+	}
+
+}
@@ -0,0 +1,355 @@
+package cz.collector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sloupcove ulozeni vzorku v pameti pro analyzy primo v zarizeni. Kazdy
+ * sloupec je drzen v samostatnem primitivnim poli, vyctove sloupce jako kody
+ * v poli bajtu. Vzorky jsou ukladany do bloku pevne velikosti, zaplnene bloky
+ * nad limit MAX_CHUNKS jsou odkladany do souboru. Prochazeni vzorku probiha
+ * nad celymi bloky bez vytvareni objektu pro jednotlive hodnoty.
+ * Uklada vzorky jednoho sberu, pri vytvoreni je odkladaci soubor vyprazdnen.
+ * @author Lukas Ambroz
+ */
+public class SampleStore {
+
+	/** Pocet vzorku v bloku */
+	public static final int CHUNK_SIZE = 4096;
+	/** Nejvyssi pocet bloku drzenych v pameti */
+	private final int MAX_CHUNKS = 8;
+
+	/**
+	 * Blok vzorku, kazdy sloupec je samostatne pole
+	 */
+	public static class Chunk {
+		/** Pocet vzorku v bloku */
+		public int size = 0;
+		/** Cas nacteni */
+		public final long[] time = new long[CHUNK_SIZE];
+		/** Zemepisna sirka */
+		public final float[] latitude = new float[CHUNK_SIZE];
+		/** Zemepisna delka */
+		public final float[] longitude = new float[CHUNK_SIZE];
+		/** Kod zvukoveho profilu */
+		public final byte[] profile = new byte[CHUNK_SIZE];
+		/** Hodina dne */
+		public final byte[] hour = new byte[CHUNK_SIZE];
+		/** Kod casti dne */
+		public final byte[] dayPart = new byte[CHUNK_SIZE];
+		/** Kod dne v tydnu */
+		public final byte[] day = new byte[CHUNK_SIZE];
+		/** Kod priznaku vikendu */
+		public final byte[] weekend = new byte[CHUNK_SIZE];
+		/** Kod stavu obrazovky */
+		public final byte[] screen = new byte[CHUNK_SIZE];
+		/** Pocet bezicich aplikaci */
+		public final int[] appCount = new int[CHUNK_SIZE];
+		/** Kod priznaku pripojenych sluchatek */
+		public final byte[] headset = new byte[CHUNK_SIZE];
+		/** Kod priznaku probihajiciho hovoru */
+		public final byte[] call = new byte[CHUNK_SIZE];
+		/** MAC adresa pripojeneho AP */
+		public final long[] apMac = new long[CHUNK_SIZE];
+		/** Identifikator mista */
+		public final int[] place = new int[CHUNK_SIZE];
+		/** Prumerna akcelerace */
+		public final float[] motion = new float[CHUNK_SIZE];
+		/** Prumerna uroven svetla */
+		public final float[] light = new float[CHUNK_SIZE];
+		/** Kod zpravy (viz SampleStore.getMessage()) */
+		public final int[] message = new int[CHUNK_SIZE];
+
+		/**
+		 * Zapise zaplnenou cast bloku do proudu
+		 */
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(size);
+			for (int i = 0; i < size; i++) out.writeLong(time[i]);
+			for (int i = 0; i < size; i++) out.writeFloat(latitude[i]);
+			for (int i = 0; i < size; i++) out.writeFloat(longitude[i]);
+			out.write(profile, 0, size);
+			out.write(hour, 0, size);
+			out.write(dayPart, 0, size);
+			out.write(day, 0, size);
+			out.write(weekend, 0, size);
+			out.write(screen, 0, size);
+			for (int i = 0; i < size; i++) out.writeInt(appCount[i]);
+			out.write(headset, 0, size);
+			out.write(call, 0, size);
+			for (int i = 0; i < size; i++) out.writeLong(apMac[i]);
+			for (int i = 0; i < size; i++) out.writeInt(place[i]);
+			for (int i = 0; i < size; i++) out.writeFloat(motion[i]);
+			for (int i = 0; i < size; i++) out.writeFloat(light[i]);
+			for (int i = 0; i < size; i++) out.writeInt(message[i]);
+		}
+
+		/**
+		 * Nacte blok z proudu
+		 */
+		void read(DataInputStream in) throws IOException {
+			size = in.readInt();
+			for (int i = 0; i < size; i++) time[i] = in.readLong();
+			for (int i = 0; i < size; i++) latitude[i] = in.readFloat();
+			for (int i = 0; i < size; i++) longitude[i] = in.readFloat();
+			in.readFully(profile, 0, size);
+			in.readFully(hour, 0, size);
+			in.readFully(dayPart, 0, size);
+			in.readFully(day, 0, size);
+			in.readFully(weekend, 0, size);
+			in.readFully(screen, 0, size);
+			for (int i = 0; i < size; i++) appCount[i] = in.readInt();
+			in.readFully(headset, 0, size);
+			in.readFully(call, 0, size);
+			for (int i = 0; i < size; i++) apMac[i] = in.readLong();
+			for (int i = 0; i < size; i++) place[i] = in.readInt();
+			for (int i = 0; i < size; i++) motion[i] = in.readFloat();
+			for (int i = 0; i < size; i++) light[i] = in.readFloat();
+			for (int i = 0; i < size; i++) message[i] = in.readInt();
+		}
+	}
+
+	/**
+	 * Rozhrani pro prochazeni ulozenych vzorku po blocich
+	 */
+	public interface ChunkVisitor {
+		/**
+		 * Vola se pro kazdy blok v poradi ulozeni. Blok je platny pouze behem
+		 * volani a nesmi byt menen.
+		 * @param chunk Blok vzorku
+		 */
+		void visit(Chunk chunk);
+	}
+
+	/** Soubor pro odkladani zaplnenych bloku */
+	private File file;
+
+	/** Bloky drzene v pameti, posledni je aktualne plneny */
+	private List<Chunk> chunks = new ArrayList<Chunk>();
+	/** Uvolneny blok pro dalsi pouziti */
+	private Chunk spare = null;
+	/** Pocet bloku odlozenych do souboru */
+	private int spilled = 0;
+	/** Delka souboru s uplnymi odlozenymi bloky */
+	private long spilledLength = 0;
+	/** Celkovy pocet pridanych vzorku */
+	private int count = 0;
+
+	/** Zpravy podle kodu */
+	private List<String> messages = new ArrayList<String>();
+	/** Kody zprav */
+	private Map<String, Integer> messageCodes = new HashMap<String, Integer>();
+	/** Kod posledni pridane zpravy */
+	private int lastMessage = -1;
+
+	/**
+	 * Konstruktor vytvori prazdne uloziste
+	 * @param file Soubor pro odkladani zaplnenych bloku
+	 */
+	public SampleStore(File file) {
+		this.file = file;
+
+		if (file.exists())
+			file.delete();
+
+		chunks.add(new Chunk());
+	}
+
+	/**
+	 * Prida vzorek na konec uloziste
+	 * @param sample Vzorek
+	 */
+	synchronized public void append(Sample sample) {
+		Chunk chunk = chunks.get(chunks.size() - 1);
+
+		if (chunk.size == CHUNK_SIZE) {
+			chunk = (spare != null) ? spare : new Chunk();
+			chunk.size = 0;
+			spare = null;
+			chunks.add(chunk);
+
+			if (chunks.size() > MAX_CHUNKS)
+				spill();
+		}
+
+		int i = chunk.size;
+		chunk.time[i] = sample.time;
+		chunk.latitude[i] = (float) sample.latitude;
+		chunk.longitude[i] = (float) sample.longitude;
+		chunk.profile[i] = sample.profile;
+		chunk.hour[i] = (byte) sample.hour;
+		chunk.dayPart[i] = sample.dayPart;
+		chunk.day[i] = sample.day;
+		chunk.weekend[i] = sample.weekend;
+		chunk.screen[i] = sample.screen;
+		chunk.appCount[i] = sample.appCount;
+		chunk.headset[i] = sample.headset;
+		chunk.call[i] = sample.call;
+		chunk.apMac[i] = sample.apMac;
+		chunk.place[i] = sample.place;
+		chunk.motion[i] = sample.motion;
+		chunk.light[i] = sample.light;
+		chunk.message[i] = messageCode(sample.message);
+		chunk.size++;
+		count++;
+	}
+
+	/**
+	 * Vrati celkovy pocet pridanych vzorku
+	 * @return Pocet vzorku
+	 */
+	synchronized public int size() {
+		return count;
+	}
+
+	/**
+	 * Vrati zpravu podle kodu
+	 * @param code Kod zpravy
+	 * @return Zprava
+	 */
+	synchronized public String getMessage(int code) {
+		return messages.get(code);
+	}
+
+	/**
+	 * Projde bloky drzene v pameti, tedy nejnovejsi vzorky
+	 * @param visitor Objekt zpracovavajici bloky
+	 */
+	synchronized public void scanRecent(ChunkVisitor visitor) {
+		for (int c = 0; c < chunks.size(); c++)
+			visitor.visit(chunks.get(c));
+	}
+
+	/**
+	 * Projde vsechny vzorky vcetne bloku odlozenych do souboru. Odlozene bloky
+	 * jsou postupne nacitany do jedineho pomocneho bloku.
+	 * @param visitor Objekt zpracovavajici bloky
+	 * @return true v pripade uspechu, false pri chybe cteni souboru
+	 */
+	synchronized public boolean scan(ChunkVisitor visitor) {
+		if (spilled > 0) {
+			DataInputStream in = null;
+			Chunk chunk = (spare != null) ? spare : new Chunk();
+
+			try {
+				in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+				for (int c = 0; c < spilled; c++) {
+					chunk.read(in);
+					visitor.visit(chunk);
+				}
+			} catch (IOException ioe) {
+				return false;
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException io) {
+						// Jiz nacteno
+					}
+				}
+			}
+
+			spare = chunk;
+		}
+
+		scanRecent(visitor);
+
+		return true;
+	}
+
+	/**
+	 * Odlozi nejstarsi blok z pameti do souboru
+	 */
+	private void spill() {
+		Chunk chunk = chunks.remove(0);
+		DataOutputStream out = null;
+
+		// Soubor musi obsahovat jen uplne bloky, jinak by se dalsi bloky posunuly
+		if ((file.length() != spilledLength) && !truncate(spilledLength)) {
+			spare = chunk;
+			return;
+		}
+
+		try {
+			// Soubor bude otevren pro pridavani
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+			chunk.write(out);
+			// Data jsou zapsana az pri uzavreni bufferu
+			out.close();
+			out = null;
+			spilled++;
+			spilledLength = file.length();
+		} catch (IOException ioe) {
+			// Blok nelze odlozit, vzorky budou zahozeny
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException io) {
+					// Blok jiz neni k dispozici
+				}
+				// Odstraneni neuplneho bloku
+				truncate(spilledLength);
+			}
+		}
+
+		spare = chunk;
+	}
+
+	/**
+	 * Zkrati soubor odlozenych bloku na zadanou delku
+	 * @return true v pripade uspechu, jinak false
+	 */
+	private boolean truncate(long length) {
+		RandomAccessFile raf = null;
+
+		try {
+			raf = new RandomAccessFile(file, "rw");
+			raf.setLength(length);
+		} catch (IOException ioe) {
+			return false;
+		} finally {
+			if (raf != null) {
+				try {
+					raf.close();
+				} catch (IOException io) {
+					// Delka jiz nastavena
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Vrati kod zpravy, neznama zprava je pridana
+	 */
+	private int messageCode(String message) {
+		// Zprava se meni jen vyjimecne
+		if ((lastMessage >= 0) && messages.get(lastMessage).equals(message))
+			return lastMessage;
+
+		Integer code = messageCodes.get(message);
+		if (code == null) {
+			code = messages.size();
+			messages.add(message);
+			messageCodes.put(message, code);
+		}
+		lastMessage = code;
+
+		return code;
+	}
+
+}
@@ -0,0 +1,200 @@
+package cz.collector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Popis formatu radku souboru data.csv. Kazdy usek souboru (jeden sber)
+ * zacina hlavickou, ktera obsahuje verzi formatu, nastaveni sberu a seznam
+ * sloupcu s jejich typy a jednotkami. Radky hlavicky zacinaji znakem #:
+ * <pre>
+ * #collector version=5 interval=30000 light_interval=5000 motion_interval=8 keyframe=120
+ * #columns ts:long:ms,lat:double:deg,...,message:string:
+ * </pre>
+ * U vyctovych sloupcu je misto jednotky uveden seznam hodnot oddeleny
+ * znakem |. Ctenar podle hlavicky urci pozice potrebnych sloupcu, pokud
+ * hlavicka odpovida vychozimu formatu, muze pouzit pevne pozice.
+ * <p>
+ * Mezi radky zarizeni spi. Akcelerometr a senzor svetla behem spanku
+ * nedodavaji hodnoty, proto jsou pri kazdem probuzeni (po interval ms)
+ * spusteny jen na 2 s (BckgndCollector.SAMPLE_WINDOW). Sloupce motion* a
+ * light* tak popisuji pouze toto okno pred zapisem radku, ne cely interval
+ * od predchoziho radku. Senzor svetla hlasi jen zmeny, prumer svetla proto
+ * pocita s posledni znamou hodnotou od zacatku okna. Pokud v okne neprisla
+ * zadna hodnota svetla, jsou ostatni sloupce light_* prazdne. Sloupce
+ * motion* jsou zaokrouhleny na 0.01 m/s2 a light* na 1 lx.
+ * <p>
+ * Uplny radek (klicovy) obsahuje vsechny sloupce. Mezi klicovymi radky, ktere
+ * jsou zapsany nejmene kazdy keyframe-ty radek a vzdy jako prvni radek za
+ * hlavickou, mohou byt zmenove radky. Zmenovy radek zacina znakem ~, za nimz
+ * nasleduje cas a dale jen zmenene sloupce ve tvaru pozice=hodnota:
+ * <pre>
+ * ~1340000030000,1=50.0801,15=9.81,16=9.7
+ * </pre>
+ * Ostatni sloupce maji stejnou hodnotu jako v predchozim radku, ctenar tedy
+ * rekonstruuje uplne radky v jednom pruchodu od klicoveho radku.
+ * @author Lukas Ambroz
+ */
+public class Schema {
+
+	/** Verze formatu */
+	public static final int VERSION = 5;
+	/** Uvod radku hlavicky s verzi a nastavenim sberu */
+	public static final String HEADER_PREFIX = "#collector ";
+	/** Uvod radku hlavicky se seznamem sloupcu */
+	public static final String COLUMNS_PREFIX = "#columns ";
+	/** Uvod zmenoveho radku */
+	public static final char DELTA_PREFIX = '~';
+
+	/**
+	 * Popis jednoho sloupce
+	 */
+	public static class Column {
+		/** Nazev sloupce */
+		public final String name;
+		/** Typ hodnoty (long, double, float, int, enum, mac, string) */
+		public final String type;
+		/** Jednotka, u vyctovych sloupcu hodnoty oddelene znakem | */
+		public final String unit;
+
+		public Column(String name, String type, String unit) {
+			this.name = name;
+			this.type = type;
+			this.unit = unit;
+		}
+
+		@Override
+		public String toString() {
+			return name + ":" + type + ":" + unit;
+		}
+	}
+
+	/** Sloupce vychoziho formatu v poradi podle Sample.COL_* */
+	public static final Column[] COLUMNS = {
+		new Column("ts", "long", "ms"),
+		new Column("lat", "double", "deg"),
+		new Column("lon", "double", "deg"),
+		new Column("profile", "enum", join(Sample.PROFILES)),
+		new Column("hour", "int", "h"),
+		new Column("daypart", "enum", join(Sample.DAY_PARTS)),
+		new Column("day", "enum", join(Sample.DAYS)),
+		new Column("weekend", "enum", join(Sample.YES_NO)),
+		new Column("screen", "enum", join(Sample.SCREEN_STATES)),
+		new Column("apps", "int", ""),
+		new Column("headset", "enum", join(Sample.YES_NO)),
+		new Column("call", "enum", join(Sample.YES_NO)),
+		new Column("ap", "mac", ""),
+		new Column("place", "int", ""),
+		new Column("wifi", "string", "id/dBm"),
+		new Column("motion", "float", "m/s2"),
+		new Column("motion_min", "float", "m/s2"),
+		new Column("motion_max", "float", "m/s2"),
+		new Column("motion_std", "float", "m/s2"),
+		new Column("motion_p50", "float", "m/s2"),
+		new Column("motion_p90", "float", "m/s2"),
+		new Column("light", "float", "lx"),
+		new Column("light_min", "float", "lx"),
+		new Column("light_max", "float", "lx"),
+		new Column("light_std", "float", "lx"),
+		new Column("light_p50", "float", "lx"),
+		new Column("light_p90", "float", "lx"),
+		new Column("message", "string", ""),
+	};
+
+	private Schema() {}
+
+	/**
+	 * Vrati hlavicku useku souboru (dva radky bez ukonceni posledniho)
+	 * @param interval Interval mezi nactenim dat (ms)
+	 * @param lightInterval Interval pro nacitani svetla (ms)
+	 * @param motionInterval Interval pro nacitani akcelerace (ms)
+	 * @param keyframe Nejvyssi pocet radku mezi klicovymi radky (1, pokud jsou
+	 * vsechny radky uplne)
+	 * @return Hlavicka
+	 */
+	public static String header(long interval, long lightInterval, long motionInterval, int keyframe) {
+		StringBuilder sb = new StringBuilder(512);
+
+		sb.append(HEADER_PREFIX).append("version=").append(VERSION);
+		sb.append(" interval=").append(interval);
+		sb.append(" light_interval=").append(lightInterval);
+		sb.append(" motion_interval=").append(motionInterval);
+		sb.append(" keyframe=").append(keyframe);
+		sb.append('\n').append(COLUMNS_PREFIX);
+		for (int i = 0; i < COLUMNS.length; i++) {
+			if (i > 0)
+				sb.append(',');
+			sb.append(COLUMNS[i]);
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Precte seznam sloupcu z radku hlavicky
+	 * @param line Radek hlavicky zacinajici COLUMNS_PREFIX
+	 * @return Sloupce nebo null, pokud radek neni seznamem sloupcu
+	 */
+	public static Column[] parseColumns(String line) {
+		if (!line.startsWith(COLUMNS_PREFIX))
+			return null;
+
+		List<Column> result = new ArrayList<Column>();
+		for (String item : line.substring(COLUMNS_PREFIX.length()).trim().split(",")) {
+			String[] parts = item.split(":", 3);
+
+			result.add(new Column(parts[0], (parts.length > 1) ? parts[1] : "string",
+					(parts.length > 2) ? parts[2] : ""));
+		}
+
+		return result.toArray(new Column[result.size()]);
+	}
+
+	/**
+	 * Vrati pozici sloupce podle nazvu
+	 * @param columns Sloupce
+	 * @param name Nazev sloupce
+	 * @return Pozice sloupce nebo -1, pokud sloupec neexistuje
+	 */
+	public static int indexOf(Column[] columns, String name) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].name.equals(name))
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Vrati, zda sloupce odpovidaji vychozimu formatu
+	 * @param columns Sloupce
+	 * @return true, pokud nazvy i poradi sloupcu odpovidaji COLUMNS
+	 */
+	public static boolean isDefault(Column[] columns) {
+		if (columns.length != COLUMNS.length)
+			return false;
+
+		for (int i = 0; i < columns.length; i++) {
+			if (!columns[i].name.equals(COLUMNS[i].name))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Spoji hodnoty vyctu znakem |
+	 */
+	private static String join(String[] values) {
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				sb.append('|');
+			sb.append(values[i]);
+		}
+
+		return sb.toString();
+	}
+
+}
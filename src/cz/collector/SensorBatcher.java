@@ -0,0 +1,185 @@
+package cz.collector;
+
+import java.lang.reflect.Method;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.util.FloatMath;
+
+/**
+ * Davkove predavani hodnot akcelerometru a senzoru svetla. Hodnoty jsou
+ * shromazdovany do poli spolu s puvodnimi casy udalosti (event.timestamp)
+ * a posluchaci predany najednou, pokud davka pokryva MAX_LATENCY, pokud se
+ * naplni nebo pri zavolani flush(). Akcelerometr je predavan jako celkova
+ * akcelerace. Pokud system podporuje davkovani v hardwaru senzoru
+ * (Android 4.4, registerListener s maxReportLatencyUs), je pri registraci
+ * vyzadano, takze zarizeni neni probouzeno kazdou udalosti. Jinak jsou
+ * udalosti dorucovany jednotlive a davky vznikaji pouze zde. Hodnoty, ktere
+ * jsou v dobe flush() jeste v hardwaru senzoru, prijdou v dalsi davce.
+ * @author Lukas Ambroz
+ */
+public class SensorBatcher implements SensorEventListener {
+
+	/** Nejvyssi zpozdeni predani hodnoty (ms) */
+	public static final int MAX_LATENCY = 1000;
+	/** Kapacita davky jednoho senzoru */
+	private static final int CAPACITY = 512;
+
+	/**
+	 * Rozhrani pro prijem davek hodnot
+	 */
+	public interface Listener {
+		/**
+		 * Vola se s davkou hodnot jednoho senzoru v poradi podle casu. Pole
+		 * patri posluchaci jen po dobu volani a posluchac je muze prepsat.
+		 * @param type Typ senzoru (Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_LIGHT)
+		 * @param times Casy udalosti senzoru (ns)
+		 * @param values Hodnoty
+		 * @param count Pocet hodnot
+		 */
+		void onBatch(int type, long[] times, float[] values, int count);
+	}
+
+	/**
+	 * Rozpracovana davka jednoho senzoru
+	 */
+	private static class Batch {
+		/** Typ senzoru */
+		final int type;
+		/** Casy udalosti (ns) */
+		final long[] times = new long[CAPACITY];
+		/** Hodnoty */
+		final float[] values = new float[CAPACITY];
+		/** Pocet hodnot */
+		int count = 0;
+
+		Batch(int type) {
+			this.type = type;
+		}
+	}
+
+	/** Davka akcelerometru */
+	private final Batch motion = new Batch(Sensor.TYPE_ACCELEROMETER);
+	/** Davka senzoru svetla */
+	private final Batch light = new Batch(Sensor.TYPE_LIGHT);
+	/** Posluchac davek */
+	private final Listener listener;
+	/** Pocet senzoru s davkovanim v hardwaru */
+	private int hardwareBatched = 0;
+
+	/**
+	 * @param listener Posluchac davek
+	 */
+	public SensorBatcher(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Zaregistruje se pro udalosti senzoru. Pokud to system umoznuje, je
+	 * vyzadano davkovani v hardwaru se zpozdenim nejvyse MAX_LATENCY.
+	 * @param manager Spravce senzoru
+	 * @param sensor Senzor (null je ignorovan)
+	 * @param rate Pozadovana frekvence (SensorManager.SENSOR_DELAY_*)
+	 * @return true v pripade uspechu, jinak false
+	 */
+	public boolean register(SensorManager manager, Sensor sensor, int rate) {
+		if (sensor == null)
+			return false;
+
+		try {
+			// Android 4.4 (API 19), na starsich verzich metody neexistuji
+			Method fifo = Sensor.class.getMethod("getFifoMaxEventCount");
+			Method register = SensorManager.class.getMethod("registerListener", SensorEventListener.class,
+					Sensor.class, int.class, int.class);
+
+			if (((Integer) fifo.invoke(sensor)) > 0) {
+				if ((Boolean) register.invoke(manager, this, sensor, rate, MAX_LATENCY * 1000)) {
+					synchronized (this) {
+						hardwareBatched++;
+					}
+					return true;
+				}
+			}
+		} catch (Exception e) {
+			// Davkovani v hardwaru neni k dispozici
+		}
+
+		return manager.registerListener(this, sensor, rate);
+	}
+
+	/**
+	 * Odregistruje se od vsech senzoru. Hodnoty zbyvajici v davkach je
+	 * treba predat metodou flush().
+	 * @param manager Spravce senzoru
+	 */
+	public void unregister(SensorManager manager) {
+		manager.unregisterListener(this);
+
+		synchronized (this) {
+			hardwareBatched = 0;
+		}
+	}
+
+	/**
+	 * Vrati pocet senzoru, pro ktere system davkuje udalosti v hardwaru
+	 * @return Pocet senzoru
+	 */
+	synchronized public int getHardwareBatched() {
+		return hardwareBatched;
+	}
+
+	/**
+	 * Preda posluchaci vsechny shromazdene hodnoty. Posluchac je volan pod
+	 * zamkem tohoto objektu, metodu proto nelze volat pod zamkem, ktery
+	 * posluchac ziskava.
+	 */
+	synchronized public void flush() {
+		deliver(motion);
+		deliver(light);
+	}
+
+	@Override
+	public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+
+	/**
+	 * Prida hodnotu udalosti do davky jejiho senzoru. Nevytvari zadne
+	 * objekty.
+	 */
+	@Override
+	synchronized public void onSensorChanged(SensorEvent event) {
+		Batch batch;
+		float value;
+
+		if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
+			batch = motion;
+			value = FloatMath.sqrt(event.values[0] * event.values[0] + event.values[1] * event.values[1] + event.values[2] * event.values[2]);
+		} else if (event.sensor.getType() == Sensor.TYPE_LIGHT) {
+			batch = light;
+			value = event.values[0];
+		} else {
+			return;
+		}
+
+		batch.times[batch.count] = event.timestamp;
+		batch.values[batch.count] = value;
+		batch.count++;
+
+		// Zpozdeni se posuzuje podle casu udalosti, ne podle casu doruceni
+		if ((batch.count == CAPACITY) || ((event.timestamp - batch.times[0]) >= MAX_LATENCY * 1000000L))
+			deliver(batch);
+	}
+
+	/**
+	 * Preda davku posluchaci a vyprazdni ji
+	 */
+	private void deliver(Batch batch) {
+		if (batch.count == 0)
+			return;
+
+		listener.onBatch(batch.type, batch.times, batch.values, batch.count);
+		batch.count = 0;
+	}
+
+}
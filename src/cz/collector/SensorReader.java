@@ -10,8 +10,6 @@ import android.app.ActivityManager;
 import android.app.ActivityManager.RunningAppProcessInfo;
 import android.content.Context;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.location.Location;
 import android.location.LocationListener;
@@ -24,7 +22,6 @@ import android.os.Environment;
 import android.os.PowerManager;
 import android.telephony.TelephonyManager;
 import android.text.format.Time;
-import android.util.FloatMath;
 
 /**
  * Provadi sber dat ze senzoru zarizeni a jejich ukladani ve tvaru pro dalsi zpracovani.
@@ -32,20 +29,44 @@ import android.util.FloatMath;
  * synchronizace kritickych sekci v prislusnych metodach.
  * @author Lukas Ambroz
  */
-public class SensorReader implements LocationListener, SensorEventListener {
+public class SensorReader implements LocationListener, SensorBatcher.Listener {
 	
 	/** Nazev souboru pro ukladani dat */
 	private final String FILE_NAME = "data.csv";
+	/** Nazev souboru pro ukladani rozpoznanych mist */
+	private final String PLACES_FILE_NAME = "places.csv";
+	/** Nazev souboru pro ukladani slovniku MAC adres AP */
+	private final String BSSIDS_FILE_NAME = "bssids.csv";
+	/** Nazev souboru pro odkladani vzorku ze sloupcoveho uloziste */
+	private final String SAMPLES_FILE_NAME = "samples.bin";
+	/** Nazev souboru pro zaznam davek surovych hodnot senzoru */
+	private final String BURST_FILE_NAME = "burst.csv";
+	/** Nazev souboru indexu bloku souboru dat */
+	private final String INDEX_FILE_NAME = "data.idx";
 	/** Interval pro nacitani svetla (5s) */
 	private final long LIGHT_INTERVAL = 5000000000L;
 	/** Interval pro nacitani akcelerace (8ms) */
 	private final long MOTION_INTERVAL = 8000000;
+	/** Nejvyssi pocet radku mezi uplnymi radky souboru (1h pri kroku 30s) */
+	private final int KEYFRAME_INTERVAL = 120;
+	/** Doba, za kterou se pocita prumerna akcelerace pro klienta (1h) */
+	private final long RECENT_PERIOD = 3600000;
 	
 	/** Reference na rodicovskou sluzbu nebo aktivitu */
 	private Context context;
 	
 	/** Zprava, pro kterou probiha sber dat */
 	private String message;
+	/** Interval mezi nactenim dat (ms) */
+	private long interval;
+	/** Priznak zapsane hlavicky useku souboru pro tento sber */
+	private boolean headerWritten = false;
+	/** Pozice hlavicky useku souboru pro tento sber */
+	private long headerOffset = 0;
+	/** Pocet radku zapsanych behem tohoto sberu */
+	private volatile long rows = 0;
+	/** Posluchac zmen hodnot senzoru (null, pokud neni nastaven) */
+	private volatile Runnable changeListener = null;
 	
 	/** Objekt poskytujici sluzby spojene s polohou */
 	private LocationManager locationManager;
@@ -54,32 +75,79 @@ public class SensorReader implements LocationListener, SensorEventListener {
 	
 	/** Objekt poskytujici sluzby spojene se senzory */
 	private SensorManager sensorManager;
+	/** Davkove predavani hodnot senzoru */
+	private SensorBatcher batcher = new SensorBatcher(this);
 	/** Senzor svetla */
 	private Sensor light;
-	/** Prumer hodnot ziskanych ze senzoru svetla */
-	private float lightAverage = 0.0F;
-	/** Pocet hodnot ziskanych ze senzoru svetla */
-	private int lightNum = 0;
+	/** Casove vazeny prumer hodnot ziskanych ze senzoru svetla */
+	private TimeWeightedMean lightMean = new TimeWeightedMean();
+	/** Statistiky hodnot ziskanych ze senzoru svetla */
+	private StreamStats lightStats = new StreamStats();
 	/** Cas posledniho nacteni svetla */
 	private long lightLast = 0;
+	/** Priznak zahajeneho okna prumeru svetla (viz TimeWeightedMean.restart) */
+	private boolean lightWindow = false;
+	/** Posledni hodnota svetla */
+	private volatile float lightCurrent = 0.0F;
 	/** Akcelerometr */
 	private Sensor motion;
-	/** Prumerna celkova akcelerace zarizeni */
-	private float motionAverage = 0.0F;
-	/** Pocet hodnot ziskanych z akcelerometru */
-	private int motionNum = 0;
+	/** Statistiky celkove akcelerace zarizeni */
+	private StreamStats motionStats = new StreamStats();
 	/** Cas posledniho nacteni akcelerace */
 	private long motionLast = 0;
+	/** Posledni hodnota akcelerace */
+	private volatile float motionCurrent = 0.0F;
+	
+	/** Rozpoznavani opakovane navstevovanych mist */
+	private PlaceDetector placeDetector;
+	/** Otisk okolnich wifi siti (null, pokud se nesbira) */
+	private WifiFingerprint wifiFingerprint = null;
+	
+	/** Vzorek pro opakovane nacitani dat */
+	private Sample sample = new Sample();
+	/** Index bloku souboru dat */
+	private BlockIndex blockIndex;
+	/** Prevod vzorku na radky se zmenenymi sloupci */
+	private DeltaEncoder encoder = new DeltaEncoder(KEYFRAME_INTERVAL);
+	/** Sloupcove uloziste nactenych vzorku */
+	private SampleStore store;
+	/** Souhrny vzorku pro dotazy na dlouhou historii */
+	private RollupPyramid rollup;
+	/** Zaznam davek surovych hodnot senzoru */
+	private BurstRecorder burstRecorder;
+	/** Spousteni davek pri zmenach stavu a akcelerace */
+	private TriggerEngine triggerEngine;
 	
 	/**
 	 * Konstruktor provadi nastaveni objektu pro nasledny sber dat ze senzoru.
 	 * Registruje vsechny potrebne listenery apod.
 	 * @param context Rodicovska sluzba nebo aktivita
 	 * @param message Zprava, pro kterou probiha sber
+	 * @param interval Interval mezi nactenim dat (ms), uvadi se v hlavicce souboru
+	 * @param preTrigger Doba pred spousteci udalosti, jejiz hodnoty davka obsahuje (ms)
+	 * @param burstDuration Delka davky od posledni spousteci udalosti (ms)
+	 * @param motionRefractory Doba po davce spustene pohybem, kdy pohyb dalsi
+	 * davku nespousti (ms)
+	 * @param wifiScanTicks Pocet kroku mezi skenovanim wifi siti pro otisk
+	 * (0 otisk nesbira)
 	 */
-	public SensorReader(Context context, String message) {
+	public SensorReader(Context context, String message, long interval, long preTrigger, long burstDuration,
+			long motionRefractory, int wifiScanTicks) {
 		this.context = context;
 		this.message = message;
+		this.interval = interval;
+		
+		placeDetector = new PlaceDetector(new File(Environment.getExternalStorageDirectory(), PLACES_FILE_NAME));
+		if (wifiScanTicks > 0)
+			wifiFingerprint = new WifiFingerprint(context, new File(Environment.getExternalStorageDirectory(), BSSIDS_FILE_NAME),
+					wifiScanTicks);
+		store = new SampleStore(new File(Environment.getExternalStorageDirectory(), SAMPLES_FILE_NAME));
+		blockIndex = new BlockIndex(new File(Environment.getExternalStorageDirectory(), INDEX_FILE_NAME));
+		rollup = new RollupPyramid(Environment.getExternalStorageDirectory(), store, interval);
+		burstRecorder = new BurstRecorder(new File(Environment.getExternalStorageDirectory(), BURST_FILE_NAME),
+				preTrigger, burstDuration);
+		triggerEngine = new TriggerEngine(context, burstRecorder, motionRefractory);
+		triggerEngine.start();
 		
 		// Registrace listeneru pro aktualizaci polohy
 		locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
@@ -91,22 +159,34 @@ public class SensorReader implements LocationListener, SensorEventListener {
 		sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
 		light = sensorManager.getDefaultSensor(Sensor.TYPE_LIGHT);
 		motion = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-		sensorManager.registerListener(this, light, SensorManager.SENSOR_DELAY_NORMAL);
-		sensorManager.registerListener(this, motion, SensorManager.SENSOR_DELAY_FASTEST);
+		batcher.register(sensorManager, light, SensorManager.SENSOR_DELAY_NORMAL);
+		batcher.register(sensorManager, motion, SensorManager.SENSOR_DELAY_FASTEST);
 	}
 	
 	/**
 	 * Vola se pro radne zruseni objektu.
 	 * Odstrani vsechny listenery apod.
 	 */
-	synchronized public void destroy() {
+	public void destroy() {
 		// Odstraneni listeneru pro aktualizaci polohy
 		locationManager.removeUpdates(this);
 		
-		// Odstraneni listeneru pro senzor svetla
-		sensorManager.unregisterListener(this, light);
-		// Odstraneni listeneru pro akcelerometr
-		sensorManager.unregisterListener(this, motion);
+		// Odstraneni listeneru senzoru a zpracovani zbyvajicich hodnot (mimo
+		// zamek, zpracovani davky jej ziskava)
+		batcher.unregister(sensorManager);
+		batcher.flush();
+		
+		synchronized (this) {
+			// Odstraneni listeneru spousteni davek a zapis posledni davky
+			triggerEngine.stop();
+			burstRecorder.drain();
+			
+			// Ulozeni rozpoznanych mist pro dalsi sber
+			placeDetector.save();
+			// Ulozeni rozpracovanych souhrnu a zaznamu posledniho bloku
+			rollup.flush();
+			blockIndex.finish(new File(Environment.getExternalStorageDirectory(), FILE_NAME).length());
+		}
 	}
 	
 	/**
@@ -145,15 +225,23 @@ public class SensorReader implements LocationListener, SensorEventListener {
 	 * @return Zvukovy profil
 	 */
 	public String getProfile() {
+		return Sample.PROFILES[getProfileCode()];
+	}
+	
+	/**
+	 * Vrati kod aktualne nastaveneho zvukoveho profilu (viz Sample.PROFILES)
+	 * @return Kod zvukoveho profilu
+	 */
+	public byte getProfileCode() {
 		AudioManager mgr = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
 		int mode = mgr.getRingerMode();
 		
 		if (mode == AudioManager.RINGER_MODE_VIBRATE)
-			return "vibrate";
+			return Sample.PROFILE_VIBRATE;
 		if (mode == AudioManager.RINGER_MODE_SILENT)
-			return "silent";
+			return Sample.PROFILE_SILENT;
 		
-		return "normal";
+		return Sample.PROFILE_NORMAL;
 	}
 	
 	/**
@@ -172,18 +260,7 @@ public class SensorReader implements LocationListener, SensorEventListener {
 	 * @return Cast dne
 	 */
 	public String getDayPart() {
-		int hour = getHour();
-		
-		if ((hour >= 6) && (hour < 10))
-			return "morning";
-		if ((hour >= 10) && (hour < 12))
-			return "forenoon";
-		if ((hour >= 12) && (hour < 18))
-			return "afternoon";
-		if ((hour >= 18) && (hour < 22))
-			return "evening";
-		
-		return "night";
+		return Sample.DAY_PARTS[Sample.dayPartOf(getHour())];
 	}
 	
 	/**
@@ -193,26 +270,8 @@ public class SensorReader implements LocationListener, SensorEventListener {
 	public String getDay() {
 		Time time = new Time();
 		time.setToNow();
-		int day = time.weekDay;
-		
-		switch (day) {
-		case Time.MONDAY:
-			return "mon";
-		case Time.TUESDAY:
-			return "tue";
-		case Time.WEDNESDAY:
-			return "wed";
-		case Time.THURSDAY:
-			return "thu";
-		case Time.FRIDAY:
-			return "fri";
-		case Time.SATURDAY:
-			return "sat";
-		default:
-			break;
-		}
 		
-		return "sun";
+		return Sample.DAYS[time.weekDay];
 	}
 	
 	/**
@@ -220,12 +279,10 @@ public class SensorReader implements LocationListener, SensorEventListener {
 	 * @return yes nebo no
 	 */
 	public String getWeekend() {
-		String day = getDay();
-		
-		if ("sat".equals(day) || "sun".equals(day))
-			return "yes";
+		Time time = new Time();
+		time.setToNow();
 		
-		return "no";
+		return Sample.YES_NO[weekendCode(time.weekDay)];
 	}
 	
 	/**
@@ -233,13 +290,20 @@ public class SensorReader implements LocationListener, SensorEventListener {
 	 * @return on nebo off
 	 */
 	public String getScreenState() {
+		return Sample.SCREEN_STATES[getScreenCode()];
+	}
+	
+	/**
+	 * Vrati kod stavu obrazovky (viz Sample.SCREEN_STATES)
+	 * @return Kod stavu obrazovky
+	 */
+	public byte getScreenCode() {
 		PowerManager mgr = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-		boolean state = mgr.isScreenOn();
 		
-		if (state)
-			return "on";
+		if (mgr.isScreenOn())
+			return Sample.YES;
 		
-		return "off";
+		return Sample.NO;
 	}
 	
 	/**
@@ -262,12 +326,20 @@ public class SensorReader implements LocationListener, SensorEventListener {
 	 * @return yes nebo no
 	 */
 	public String getHeadset() {
+		return Sample.YES_NO[getHeadsetCode()];
+	}
+	
+	/**
+	 * Vrati kod priznaku pripojenych sluchatek (viz Sample.YES_NO)
+	 * @return Kod priznaku
+	 */
+	public byte getHeadsetCode() {
 		AudioManager mgr = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
 		
 		if (mgr.isBluetoothA2dpOn() || mgr.isWiredHeadsetOn())
-			return "yes";
+			return Sample.YES;
 		
-		return "no";
+		return Sample.NO;
 	}
 	
 	/**
@@ -275,13 +347,21 @@ public class SensorReader implements LocationListener, SensorEventListener {
 	 * @return yes nebo no
 	 */
 	public String getCall() {
+		return Sample.YES_NO[getCallCode()];
+	}
+	
+	/**
+	 * Vrati kod priznaku probihajiciho hovoru (viz Sample.YES_NO)
+	 * @return Kod priznaku
+	 */
+	public byte getCallCode() {
 		TelephonyManager mgr = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
 		int state = mgr.getCallState();
 		
 		if (state == TelephonyManager.CALL_STATE_OFFHOOK)
-			return "yes";
+			return Sample.YES;
 		
-		return "no";
+		return Sample.NO;
 	}
 	
 	/**
@@ -303,30 +383,51 @@ public class SensorReader implements LocationListener, SensorEventListener {
 		return addr;
 	}
 	
+	/**
+	 * Vrati identifikator mista, ve kterem se zarizeni nachazi, podle aktualni
+	 * polohy a MAC adresy pripojeneho AP (0 pro nezname misto)
+	 * @param apMac MAC adresa pripojeneho AP nebo prazdny retezec
+	 * @return Identifikator mista
+	 */
+	public int getPlace(String apMac) {
+		return placeDetector.update(getLatitude(), getLongitude(), BssidDictionary.macToLong(apMac));
+	}
+	
+	/**
+	 * Vrati otisk okolnich wifi siti ve tvaru id:dBm;id:dBm... (identifikatory
+	 * AP jsou ulozeny v souboru BSSIDS_FILE_NAME) nebo prazdny retezec
+	 * @return Otisk wifi siti
+	 */
+	public String getWifiFingerprint() {
+		if (wifiFingerprint == null)
+			return "";
+		
+		return wifiFingerprint.getFingerprint();
+	}
+	
 	/**
 	 * Vrati prumernou hodnotu akcelerace zarizeni od posledniho zavolani metody
 	 * @return Akcelerace
 	 */
-	public float getMotion() {
-		float result = motionAverage;
+	synchronized public float getMotion() {
+		float result = (float) motionStats.getMean();
 		
-		// Vynulovani promennych pro vypocet prumeru
-		motionAverage = 0.0F;
-		motionNum = 0;
+		// Vynulovani statistik pro dalsi okno
+		motionStats.reset();
 		
 		return result;
 	}
 	
 	/**
-	 * Vrati prumernou uroven svetla od posledniho zavolani teto metody
+	 * Vrati casove vazeny prumer urovne svetla od posledniho zavolani teto metody
 	 * @return Uroven svetla
 	 */
-	public float getLightLevel() {
-		float result = lightAverage;
+	synchronized public float getLightLevel() {
+		float result = (float) lightMean.close(Math.max(lightLast, motionLast));
 		
-		// Vynulovani promennych pro vypocet prumeru
-		lightAverage = 0.0F;
-		lightNum = 0;
+		// Vynulovani statistik pro dalsi okno, to zacne prvni udalosti
+		lightStats.reset();
+		lightWindow = false;
 		
 		return result;
 	}
@@ -339,38 +440,183 @@ public class SensorReader implements LocationListener, SensorEventListener {
 		return message;
 	}
 	
+	/**
+	 * Nastavi posluchace spusteni davky zaznamu surovych hodnot senzoru
+	 * @param listener Posluchac nebo null
+	 */
+	public void setTriggerListener(TriggerEngine.Listener listener) {
+		triggerEngine.setListener(listener);
+	}
+	
+	/**
+	 * Zapise do souboru BURST_FILE_NAME hodnoty davky nactene od posledniho
+	 * zapisu
+	 * @return true v pripade uspechu, jinak false
+	 */
+	public boolean flushBurst() {
+		return burstRecorder.drain();
+	}
+	
+	/**
+	 * Nastavi posluchace, ktery je volan pri kazde nove davce hodnot svetla
+	 * nebo akcelerace. Volani probiha ve vlakne senzoru nebo sberu, posluchac
+	 * proto nesmi nic zdrzovat.
+	 * @param listener Posluchac nebo null
+	 */
+	public void setChangeListener(Runnable listener) {
+		changeListener = listener;
+	}
+	
+	/**
+	 * Vrati pocet radku zapsanych behem tohoto sberu
+	 * @return Pocet radku
+	 */
+	public long getRowCount() {
+		return rows;
+	}
+	
+	/**
+	 * Vrati posledni nactenou hodnotu akcelerace (bez vynulovani statistik)
+	 * @return Akcelerace
+	 */
+	public float getCurrentMotion() {
+		return motionCurrent;
+	}
+	
+	/**
+	 * Vrati posledni nactenou uroven svetla (bez vynulovani statistik)
+	 * @return Uroven svetla
+	 */
+	public float getCurrentLight() {
+		return lightCurrent;
+	}
+	
+	/**
+	 * Vrati prumernou akceleraci vzorku za poslednich RECENT_PERIOD ms ze
+	 * sloupcoveho uloziste. Bloky v pameti pokryvaji nejmene den sberu,
+	 * odlozene bloky se tedy necitaji.
+	 * @return Prumerna akcelerace nebo NaN, pokud v dobe neni zadny vzorek
+	 */
+	public float getRecentMotion() {
+		final long from = System.currentTimeMillis() - RECENT_PERIOD;
+		final double[] sum = new double[2];
+		
+		store.scanRecent(new SampleStore.ChunkVisitor() {
+			public void visit(SampleStore.Chunk chunk) {
+				for (int i = 0; i < chunk.size; i++) {
+					if (chunk.time[i] < from)
+						continue;
+					sum[0] += chunk.motion[i];
+					sum[1]++;
+				}
+			}
+		});
+		
+		return (sum[1] > 0) ? (float) (sum[0] / sum[1]) : Float.NaN;
+	}
+	
+	/**
+	 * Vrati pocet hodnot davek, ktere byly prepsany pred zapisem do souboru
+	 * @return Pocet hodnot
+	 */
+	public int getBurstLost() {
+		return burstRecorder.getLost();
+	}
+	
+	/**
+	 * Vrati pocet senzoru, pro ktere system davkuje udalosti v hardwaru
+	 * (viz SensorBatcher)
+	 * @return Pocet senzoru
+	 */
+	public int getHardwareBatched() {
+		return batcher.getHardwareBatched();
+	}
+	
+	/**
+	 * Vrati pocet vzorku, ktere chybi v souhrnech (viz RollupPyramid)
+	 * @return Pocet vzorku
+	 */
+	public long getRollupDropped() {
+		return rollup.getDropped();
+	}
+	
+	/**
+	 * Vrati celkovou velikost souboru, do kterych se uklada sber
+	 * @return Velikost (B)
+	 */
+	public long getStorageUsed() {
+		File dir = Environment.getExternalStorageDirectory();
+		long result = rollup.getStorageUsed();
+		
+		for (String name : new String[] { FILE_NAME, INDEX_FILE_NAME, SAMPLES_FILE_NAME, BURST_FILE_NAME,
+				PLACES_FILE_NAME, BSSIDS_FILE_NAME })
+			result += new File(dir, name).length();
+		
+		return result;
+	}
+	
+	/**
+	 * Nacte data ze vsech senzoru do zadaneho vzorku
+	 * @param sample Vzorek, jehoz hodnoty budou prepsany
+	 */
+	public void readSample(Sample sample) {
+		Time time = new Time();
+		time.setToNow();
+		String apMac = getApMac();
+		
+		sample.time = System.currentTimeMillis();
+		sample.latitude = getLatitude();
+		sample.longitude = getLongitude();
+		sample.profile = getProfileCode();
+		sample.hour = time.hour;
+		sample.dayPart = Sample.dayPartOf(time.hour);
+		sample.day = (byte) time.weekDay;
+		sample.weekend = weekendCode(time.weekDay);
+		sample.screen = getScreenCode();
+		sample.appCount = getAppCount();
+		sample.headset = getHeadsetCode();
+		sample.call = getCallCode();
+		sample.apMac = BssidDictionary.macToLong(apMac);
+		sample.place = getPlace(apMac);
+		sample.wifi = getWifiFingerprint();
+		readMotion(sample);
+		readLight(sample);
+		sample.roundStats();
+		sample.message = getMessage();
+	}
+	
 	/**
 	 * Nacte data ze vsech senzoru a vrati je v jednom radku ve formatu CSV
 	 * @return Nactena data ve formatu CSV
 	 */
 	public String getCsvLine() {
-		String result = "";
-		
-		result += getLatitude() + ",";
-		result += getLongitude() + ",";
-		result += getProfile() + ",";
-		result += getHour() + ",";
-		result += getDayPart() + ",";
-		result += getDay() + ",";
-		result += getWeekend() + ",";
-		result += getScreenState() + ",";
-		result += getAppCount() + ",";
-		result += getHeadset() + ",";
-		result += getCall() + ",";
-		result += getApMac() + ",";
-		result += getMotion() + ",";
-		result += getLightLevel() + ",";
-		result += getMessage();
+		Sample result = new Sample();
+		readSample(result);
 		
-		return result;
+		return result.toCsvLine();
 	}
 	
 	/**
 	 * Provede cteni dat ze vsech senzoru a ziskane hodnoty ulozi do vychoziho
-	 * CSV souboru na SD karte
+	 * CSV souboru na SD karte a do sloupcoveho uloziste vzorku. Pred prvnim
+	 * radkem sberu je zapsana hlavicka s popisem sloupcu (viz Schema). Radky
+	 * obsahuji jen sloupce zmenene od predchoziho radku, uplny radek je
+	 * zapsan za hlavickou a dale kazdy KEYFRAME_INTERVAL-ty radek. Kazdym
+	 * uplnym radkem zacina novy blok indexu souboru (viz BlockIndex). Pred
+	 * ctenim jsou zpracovany hodnoty senzoru cekajici v davkach.
 	 * @return true v pripade uspechu, jinak false
 	 */
-	synchronized public boolean storeCsvLine() {
+	public boolean storeCsvLine() {
+		// Mimo zamek, zpracovani davky jej ziskava (viz SensorBatcher.flush)
+		batcher.flush();
+		
+		return storeLine();
+	}
+	
+	/**
+	 * Nacte a ulozi vzorek (viz storeCsvLine)
+	 */
+	synchronized private boolean storeLine() {
 		File file = new File(Environment.getExternalStorageDirectory(), FILE_NAME);
 		FileWriter fw = null;
 		PrintWriter out = null;
@@ -381,15 +627,81 @@ public class SensorReader implements LocationListener, SensorEventListener {
 		} catch (IOException ioe) {
 			return false;
 		}
+		// Pozice zapisovaneho radku
+		long offset = file.length();
+		
+		readSample(sample);
+		store.append(sample);
+		rollup.add(sample);
+		// Zmeny stavu, o kterych system neposlal broadcast
+		triggerEngine.check(sample);
 		
 		// Otevreni souboru pro zapis s radkovym bufferovanim a zapis dat
 		out = new PrintWriter(fw, false);
-		out.println(getCsvLine());
+		// Kazdy sber zacina hlavickou s popisem sloupcu
+		if (!headerWritten) {
+			out.println(Schema.header(interval, LIGHT_INTERVAL / 1000000, MOTION_INTERVAL / 1000000, KEYFRAME_INTERVAL));
+			headerWritten = true;
+			headerOffset = offset;
+			encoder.reset();
+			blockIndex.start(offset, headerOffset);
+		} else if (encoder.isKeyframeDue()) {
+			blockIndex.start(offset, headerOffset);
+		}
+		blockIndex.add(sample);
+		out.println(encoder.encode(sample));
 		out.close();
+		rows++;
+		
+		// Ulozeni novych AP, na ktere se odkazuje zapsany radek
+		if (wifiFingerprint != null)
+			wifiFingerprint.flush();
+		// Zapis hodnot probihajici davky
+		burstRecorder.drain();
 		
 		return true;
 	}
 	
+	/**
+	 * Nacte do vzorku statistiky akcelerace od posledniho nacteni a vynuluje je
+	 */
+	synchronized private void readMotion(Sample sample) {
+		sample.motionMin = (float) motionStats.getMin();
+		sample.motionMax = (float) motionStats.getMax();
+		sample.motionStd = (float) motionStats.getStd();
+		sample.motionMedian = (float) motionStats.getMedian();
+		sample.motionP90 = (float) motionStats.getP90();
+		sample.motion = getMotion();
+	}
+	
+	/**
+	 * Nacte do vzorku statistiky svetla od posledniho nacteni a vynuluje je.
+	 * Okno casove vazeneho prumeru zacina prvni udalosti ze senzoru po
+	 * predchozim nacteni a je uzavreno casem posledni udalosti (casova osa
+	 * udalosti se nemusi shodovat se systemovym casem). Pokud v okne neprisla
+	 * zadna hodnota svetla, jsou ostatni statistiky NaN (prazdna pole).
+	 */
+	synchronized private void readLight(Sample sample) {
+		boolean empty = (lightStats.getCount() == 0);
+		
+		sample.lightMin = empty ? Float.NaN : (float) lightStats.getMin();
+		sample.lightMax = empty ? Float.NaN : (float) lightStats.getMax();
+		sample.lightStd = empty ? Float.NaN : (float) lightStats.getStd();
+		sample.lightMedian = empty ? Float.NaN : (float) lightStats.getMedian();
+		sample.lightP90 = empty ? Float.NaN : (float) lightStats.getP90();
+		sample.light = getLightLevel();
+	}
+	
+	/**
+	 * Vrati kod priznaku vikendu pro zadany den v tydnu
+	 */
+	private static byte weekendCode(int weekDay) {
+		if ((weekDay == Time.SATURDAY) || (weekDay == Time.SUNDAY))
+			return Sample.YES;
+		
+		return Sample.NO;
+	}
+	
 	/**
 	 * Metoda volana pri zmene lokace
 	 */
@@ -406,37 +718,68 @@ public class SensorReader implements LocationListener, SensorEventListener {
 	@Override
 	public void onStatusChanged(String provider, int status, Bundle extras) {}
 	
-	@Override
-	public void onAccuracyChanged(Sensor sensor, int accuracy) {}
 	/**
-	 * Callback metoda pro ziskani aktualnich dat ze senzoru
+	 * Zpracuje davku hodnot senzoru (viz SensorBatcher). Hodnoty jsou
+	 * vybirany a zpracovany podle puvodnich casu udalosti, vysledky jsou
+	 * tedy stejne jako pri zpracovani jednotlivych udalosti.
 	 */
 	@Override
-	public void onSensorChanged(SensorEvent event) {
-		if (event.sensor.getType() == Sensor.TYPE_LIGHT) {
-			// Pro senzor svetla
-			if ((event.timestamp - lightLast) > LIGHT_INTERVAL) {
-				lightLast = event.timestamp;
+	public void onBatch(int type, long[] times, float[] values, int count) {
+		if (type == Sensor.TYPE_LIGHT) {
+			// Pro davky se zaznamenavaji vsechny hodnoty svetla
+			triggerEngine.onLight(times, values, count);
+			lightCurrent = values[count - 1];
+			
+			synchronized (this) {
+				// Vyber hodnot po LIGHT_INTERVAL na zacatek poli
+				int n = 0;
+				for (int i = 0; i < count; i++) {
+					if ((times[i] - lightLast) > LIGHT_INTERVAL) {
+						lightLast = times[i];
+						times[n] = times[i];
+						values[n++] = values[i];
+					}
+				}
 				
-				// Vypocet prumeru inkrementalne
-				synchronized (this) {
-					lightAverage = lightAverage + ((event.values[0] - lightAverage) / ++lightNum);
+				// Prubezne statistiky a casove vazeny prumer
+				if ((n > 0) && !lightWindow) {
+					lightMean.restart(times[0]);
+					lightWindow = true;
 				}
+				lightStats.add(values, n);
+				lightMean.add(values, times, n);
 			}
-		} else if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-			// Pro akcelerometr
-			if ((event.timestamp - motionLast) > MOTION_INTERVAL) {
-				motionLast = event.timestamp;
+		} else if (type == Sensor.TYPE_ACCELEROMETER) {
+			int n = 0;
+			
+			synchronized (this) {
+				// Vyber hodnot po MOTION_INTERVAL na zacatek poli
+				for (int i = 0; i < count; i++) {
+					if ((times[i] - motionLast) > MOTION_INTERVAL) {
+						motionLast = times[i];
+						times[n] = times[i];
+						values[n++] = values[i];
+					}
+				}
 				
-				// Vypocet vysledne akcelerace
-				float magnitude = FloatMath.sqrt(event.values[0] * event.values[0] + event.values[1] * event.values[1] + event.values[2] * event.values[2]);
+				// Prubezne statistiky bez alokace
+				motionStats.add(values, n);
 				
-				// Vypocet prumeru inkrementalne
-				synchronized (this) {
-					motionAverage = motionAverage + ((magnitude - motionAverage) / ++motionNum);
+				// Prvni udalost po nacteni zahajuje okno prumeru svetla
+				if ((n > 0) && !lightWindow) {
+					lightMean.restart(times[0]);
+					lightWindow = true;
 				}
 			}
+			// Zaznam pro davky a detekce nahle zmeny
+			triggerEngine.onMotion(times, values, n);
+			if (n > 0)
+				motionCurrent = values[n - 1];
 		}
+		
+		Runnable listener = changeListener;
+		if (listener != null)
+			listener.run();
 	}
 	
 }
@@ -0,0 +1,87 @@
+package cz.collector;
+
+/**
+ * Simulovane hodiny pro testovani planovani mimo zarizeni. Cas se posouva
+ * pouze volanim advance() a elapse(), naplanovana probuzeni jsou predana
+ * zadanemu obsluznemu objektu synchronne.
+ * @author Lukas Ambroz
+ */
+public class SimulatedAlarmClock implements AlarmClock {
+
+	/** Aktualni simulovany cas */
+	private long now = 0;
+	/** Cas naplanovaneho probuzeni (-1, pokud neni naplanovano) */
+	private long triggerAt = -1;
+	/** Obsluha probuzeni */
+	private Runnable handler = null;
+	/** Pocet dorucenych probuzeni */
+	private int alarms = 0;
+
+	/**
+	 * Nastavi obsluhu probuzeni (typicky WakeupScheduler.onAlarm())
+	 * @param handler Obsluha probuzeni
+	 */
+	public void setHandler(Runnable handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public long now() {
+		return now;
+	}
+
+	@Override
+	public void schedule(long triggerAt) {
+		this.triggerAt = triggerAt;
+	}
+
+	@Override
+	public void cancel() {
+		triggerAt = -1;
+	}
+
+	/**
+	 * Posune cas o zadanou dobu a dorucuje vsechna probuzeni, ktera behem
+	 * ni nastanou
+	 * @param millis Doba v ms
+	 */
+	public void advance(long millis) {
+		long target = now + millis;
+
+		while ((triggerAt >= 0) && (triggerAt <= target)) {
+			now = Math.max(now, triggerAt);
+			triggerAt = -1;
+			alarms++;
+
+			if (handler != null)
+				handler.run();
+		}
+
+		now = Math.max(now, target);
+	}
+
+	/**
+	 * Posune cas bez doruceni probuzeni (simulace prace behem probuzeni)
+	 * @param millis Doba v ms
+	 */
+	public void elapse(long millis) {
+		now += millis;
+	}
+
+	/**
+	 * Vrati cas naplanovaneho probuzeni
+	 * @return Cas nebo -1, pokud probuzeni neni naplanovano
+	 */
+	public long getTriggerAt() {
+		return triggerAt;
+	}
+
+	/**
+	 * Vrati pocet dorucenych probuzeni
+	 * @return Pocet probuzeni
+	 */
+	public int getAlarms() {
+		return alarms;
+	}
+
+}
@@ -0,0 +1,156 @@
+package cz.collector;
+
+/**
+ * Prubezne statistiky hodnot jednoho okna sberu: pocet, minimum, maximum,
+ * prumer a rozptyl (Welfordovym algoritmem) a odhad medianu a 90% kvantilu
+ * (viz P2Quantile). Pamet je konstantni a pridani hodnoty nevytvari zadne
+ * objekty, lze ji tedy volat primo z callbacku senzoru.
+ * @author Lukas Ambroz
+ */
+public class StreamStats {
+
+	/** Pocet hodnot */
+	private int count = 0;
+	/** Nejmensi hodnota */
+	private double min = 0.0;
+	/** Nejvetsi hodnota */
+	private double max = 0.0;
+	/** Prumer */
+	private double mean = 0.0;
+	/** Soucet ctvercu odchylek od prumeru */
+	private double m2 = 0.0;
+	/** Odhad medianu */
+	private final P2Quantile p50 = new P2Quantile(0.5);
+	/** Odhad 90% kvantilu */
+	private final P2Quantile p90 = new P2Quantile(0.9);
+
+	/**
+	 * Vynuluje statistiky pro nove okno
+	 */
+	public void reset() {
+		count = 0;
+		min = 0.0;
+		max = 0.0;
+		mean = 0.0;
+		m2 = 0.0;
+		p50.reset();
+		p90.reset();
+	}
+
+	/**
+	 * Prida hodnotu
+	 * @param x Hodnota
+	 */
+	public void add(double x) {
+		if ((count == 0) || (x < min))
+			min = x;
+		if ((count == 0) || (x > max))
+			max = x;
+
+		count++;
+		double delta = x - mean;
+		mean += delta / count;
+		m2 += delta * (x - mean);
+
+		p50.add(x);
+		p90.add(x);
+	}
+
+	/**
+	 * Prida davku hodnot. Vysledek je shodny s postupnym pridanim hodnot
+	 * metodou add(double), stav je ale behem davky drzen v lokalnich
+	 * promennych.
+	 * @param values Hodnoty
+	 * @param n Pocet hodnot od zacatku pole
+	 */
+	public void add(float[] values, int n) {
+		int c = count;
+		double lo = min;
+		double hi = max;
+		double m = mean;
+		double s = m2;
+
+		for (int i = 0; i < n; i++) {
+			double x = values[i];
+
+			if ((c == 0) || (x < lo))
+				lo = x;
+			if ((c == 0) || (x > hi))
+				hi = x;
+
+			c++;
+			double delta = x - m;
+			m += delta / c;
+			s += delta * (x - m);
+
+			p50.add(x);
+			p90.add(x);
+		}
+
+		count = c;
+		min = lo;
+		max = hi;
+		mean = m;
+		m2 = s;
+	}
+
+	/**
+	 * Vrati pocet hodnot
+	 * @return Pocet hodnot
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Vrati nejmensi hodnotu
+	 * @return Minimum nebo 0 pro prazdne okno
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Vrati nejvetsi hodnotu
+	 * @return Maximum nebo 0 pro prazdne okno
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Vrati prumer
+	 * @return Prumer nebo 0 pro prazdne okno
+	 */
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * Vrati smerodatnou odchylku
+	 * @return Smerodatna odchylka nebo 0 pro mene nez dve hodnoty
+	 */
+	public double getStd() {
+		if (count < 2)
+			return 0.0;
+
+		return Math.sqrt(m2 / count);
+	}
+
+	/**
+	 * Vrati odhad medianu
+	 * @return Median nebo 0 pro prazdne okno
+	 */
+	public double getMedian() {
+		return p50.get();
+	}
+
+	/**
+	 * Vrati odhad 90% kvantilu
+	 * @return 90% kvantil nebo 0 pro prazdne okno
+	 */
+	public double getP90() {
+		return p90.get();
+	}
+
+}
@@ -0,0 +1,73 @@
+package cz.collector;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.PowerManager;
+import android.os.PowerManager.WakeLock;
+
+/**
+ * Prijemce probuzeni naplanovanych pomoci AndroidAlarmClock. System drzi
+ * zarizeni vzhure jen behem onReceive(), proto prijemce ziska kratky
+ * WakeLock s omezenou dobou platnosti a preda krok sluzbe BckgndCollector,
+ * ktera ho po dokonceni kroku uvolni metodou release(). Kazde probuzeni
+ * drzi vlastni referenci, takze probuzeni behem probihajiciho kroku
+ * neuvolni WakeLock, na kterem tento krok zavisi.
+ * @author Lukas Ambroz
+ */
+public class TickReceiver extends BroadcastReceiver {
+
+	/** Nejdelsi doba drzeni WakeLock pro jeden krok (10s) */
+	private static final long TICK_WAKE_TIMEOUT = 10000;
+
+	/** Zajistuje beh zarizeni behem kroku sberu */
+	private static WakeLock wakeLock = null;
+	/** Pocet neuvolnenych referenci (probuzeni) */
+	private static int holders = 0;
+
+	@Override
+	public void onReceive(Context context, Intent intent) {
+		acquire(context);
+
+		Intent tick = new Intent(context, BckgndCollector.class);
+		tick.setAction(BckgndCollector.ACTION_TICK);
+		context.startService(tick);
+	}
+
+	/**
+	 * Ziska referenci WakeLock pro jedno probuzeni. Kazde ziskani obnovi
+	 * dobu platnosti TICK_WAKE_TIMEOUT.
+	 * @param context Kontext aplikace
+	 */
+	synchronized static void acquire(Context context) {
+		if (wakeLock == null) {
+			PowerManager manager = (PowerManager) context.getApplicationContext().getSystemService(Context.POWER_SERVICE);
+			wakeLock = manager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "Collector");
+			wakeLock.setReferenceCounted(false);
+		}
+
+		holders++;
+		wakeLock.acquire(TICK_WAKE_TIMEOUT);
+	}
+
+	/**
+	 * Uvolni referenci jednoho probuzeni (po dokonceni kroku nebo pokud se
+	 * krok nespustil), WakeLock je uvolnen po uvolneni vsech referenci
+	 */
+	synchronized static void release() {
+		if (holders > 0)
+			holders--;
+		if (holders == 0)
+			releaseAll();
+	}
+
+	/**
+	 * Uvolni WakeLock bez ohledu na pocet referenci (pri ukonceni sluzby)
+	 */
+	synchronized static void releaseAll() {
+		holders = 0;
+		if ((wakeLock != null) && wakeLock.isHeld())
+			wakeLock.release();
+	}
+
+}
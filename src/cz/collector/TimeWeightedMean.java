@@ -0,0 +1,107 @@
+package cz.collector;
+
+/**
+ * Casove vazeny prumer hodnoty, ktera plati od sveho nacteni az do nacteni
+ * dalsi hodnoty. Hodi se pro senzory, jejichz udalosti prichazeji
+ * nepravidelne (napr. svetlo). Posledni hodnota okna plati i na zacatku
+ * dalsiho okna.
+ * @author Lukas Ambroz
+ */
+public class TimeWeightedMean {
+
+	/** Posledni hodnota */
+	private double value = 0.0;
+	/** Cas posledni hodnoty (ns) */
+	private long valueTime = 0;
+	/** Priznak, zda jiz byla nactena nejaka hodnota */
+	private boolean hasValue = false;
+	/** Cas zacatku okna (ns) */
+	private long windowStart = 0;
+	/** Integral hodnoty pres cas od zacatku okna */
+	private double integral = 0.0;
+
+	/**
+	 * Prida hodnotu
+	 * @param x Hodnota
+	 * @param time Cas nacteni hodnoty (ns)
+	 */
+	public void add(double x, long time) {
+		if (hasValue) {
+			if (time > valueTime)
+				integral += value * (time - valueTime);
+		} else {
+			windowStart = time;
+			hasValue = true;
+		}
+
+		value = x;
+		valueTime = time;
+	}
+
+	/**
+	 * Prida davku hodnot serazenych podle casu. Vysledek je shodny
+	 * s postupnym pridanim hodnot metodou add(double, long).
+	 * @param values Hodnoty
+	 * @param times Casy nacteni hodnot (ns)
+	 * @param n Pocet hodnot od zacatku poli
+	 */
+	public void add(float[] values, long[] times, int n) {
+		if (n == 0)
+			return;
+
+		// Prvni hodnota muze zahajit okno
+		add(values[0], times[0]);
+
+		double v = value;
+		long t = valueTime;
+		double sum = integral;
+
+		for (int i = 1; i < n; i++) {
+			if (times[i] > t)
+				sum += v * (times[i] - t);
+			v = values[i];
+			t = times[i];
+		}
+
+		value = v;
+		valueTime = t;
+		integral = sum;
+	}
+
+	/**
+	 * Zahaji nove okno v zadanem case. Doba od uzavreni predchoziho okna
+	 * (napr. spanek zarizeni) se do prumeru nezapocita, posledni hodnota
+	 * plati od zacatku noveho okna.
+	 * @param time Cas zacatku okna (ns), ve stejne casove ose jako add()
+	 */
+	public void restart(long time) {
+		windowStart = time;
+		integral = 0.0;
+		if (hasValue)
+			valueTime = time;
+	}
+
+	/**
+	 * Uzavre okno k zadanemu casu, vrati jeho prumer a zahaji okno nove
+	 * @param time Cas uzavreni okna (ns), ve stejne casove ose jako add()
+	 * @return Casove vazeny prumer nebo 0, pokud jeste nebyla nactena hodnota
+	 */
+	public double close(long time) {
+		if (!hasValue)
+			return 0.0;
+
+		if (time > valueTime) {
+			integral += value * (time - valueTime);
+			valueTime = time;
+		}
+
+		long duration = valueTime - windowStart;
+		double result = (duration > 0) ? integral / duration : value;
+
+		windowStart = valueTime;
+		integral = 0.0;
+
+		return result;
+	}
+
+}
@@ -0,0 +1,287 @@
+package cz.collector;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.wifi.WifiManager;
+import android.telephony.PhoneStateListener;
+import android.telephony.TelephonyManager;
+
+/**
+ * Sleduje levne signaly (stav obrazovky, hovor, pripojeny AP) a nahle zmeny
+ * miry pohybu a pri jejich zmene spusti davku zaznamu surovych hodnot (viz
+ * BurstRecorder). Mirou pohybu je smerodatna odchylka celkove akcelerace
+ * v oknech MOTION_WINDOW, jejiz zmenu hleda ChangeDetector. Pravidelny
+ * pohyb (chuze) tak davky nespousti, hlasen je jeho zacatek a konec. Po
+ * davce spustene pohybem nemuze pohyb spustit dalsi davku po dobu
+ * refractory, aby trvaly pohyb nedrzel zarizeni vzhuru. Mezi kroky sberu
+ * akcelerometr nebezi, po mezere delsi nez okno proto detekce zmeny zacina
+ * nove soucty odchylek (viz ChangeDetector.restart()). Zmeny stavu jsou zjisteny
+ * z broadcastu systemu hned pri udalosti a navic porovnanim nactenych vzorku,
+ * prvni zjisteny stav davku nespousti. Posluchac je informovan o zacatku
+ * nebo prodlouzeni davky, aby mohl zrychlit sber.
+ * @author Lukas Ambroz
+ */
+public class TriggerEngine {
+
+	/** Zmena stavu obrazovky */
+	public static final int SCREEN = 0;
+	/** Zacatek nebo konec hovoru */
+	public static final int CALL = 1;
+	/** Zmena pripojeneho AP */
+	public static final int AP = 2;
+	/** Nahla zmena akcelerace */
+	public static final int MOTION = 3;
+	/** Nazvy duvodu spusteni davky */
+	public static final String[] REASONS = { "screen", "call", "ap", "motion" };
+	
+	/** Delka okna pro vypocet miry pohybu (1s) */
+	private static final long MOTION_WINDOW = 1000000000L;
+	/** Nejmensi pocet hodnot okna pro vypocet miry pohybu */
+	private static final int MOTION_WINDOW_MIN = 10;
+
+	/**
+	 * Posluchac spusteni davky
+	 */
+	public interface Listener {
+		/**
+		 * Vola se pri zacatku nebo prodlouzeni davky (ve vlakne udalosti)
+		 * @param reason Duvod (viz REASONS)
+		 */
+		void onTrigger(int reason);
+	}
+
+	/** Reference na rodicovskou sluzbu nebo aktivitu */
+	private Context context;
+	/** Zaznam davek */
+	private BurstRecorder recorder;
+	/** Detekce zmeny miry pohybu */
+	private ChangeDetector detector = new ChangeDetector();
+	/** Doba po konci davky spustene pohybem, kdy pohyb davku nespousti (ns) */
+	private long refractory;
+	/** Nejdrivejsi cas dalsi davky spustene pohybem (ns, cas udalosti senzoru) */
+	private long motionAllowed = Long.MIN_VALUE;
+	/** Cas prvni hodnoty okna (ns) */
+	private long windowStart = 0;
+	/** Cas posledni hodnoty okna (ns) */
+	private long windowLast = 0;
+	/** Pocet hodnot okna */
+	private int windowCount = 0;
+	/** Soucet hodnot okna */
+	private double windowSum = 0.0;
+	/** Soucet ctvercu hodnot okna */
+	private double windowSum2 = 0.0;
+	/** Posluchac spusteni davky (null, pokud neni nastaven) */
+	private volatile Listener listener = null;
+
+	/** Posledni stav obrazovky (-1, pokud dosud neni znam) */
+	private int screen = -1;
+	/** Posledni stav hovoru (-1, pokud dosud neni znam) */
+	private int call = -1;
+	/** Posledni pripojeny AP (-1, pokud dosud neni znam) */
+	private long apMac = -1;
+
+	/** Prijemce broadcastu o stavu obrazovky a wifi */
+	private BroadcastReceiver receiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			String action = intent.getAction();
+
+			if (Intent.ACTION_SCREEN_ON.equals(action))
+				onScreen(Sample.YES);
+			else if (Intent.ACTION_SCREEN_OFF.equals(action))
+				onScreen(Sample.NO);
+			else if (WifiManager.NETWORK_STATE_CHANGED_ACTION.equals(action))
+				onAp(BssidDictionary.macToLong(intent.getStringExtra(WifiManager.EXTRA_BSSID)));
+		}
+	};
+
+	/** Posluchac stavu hovoru */
+	private PhoneStateListener phoneListener = new PhoneStateListener() {
+		@Override
+		public void onCallStateChanged(int state, String incomingNumber) {
+			onCall((state == TelephonyManager.CALL_STATE_OFFHOOK) ? Sample.YES : Sample.NO);
+		}
+	};
+
+	/**
+	 * @param context Rodicovska sluzba nebo aktivita
+	 * @param recorder Zaznam davek
+	 * @param refractory Doba po konci davky spustene pohybem, kdy pohyb
+	 * dalsi davku nespousti (ms)
+	 */
+	public TriggerEngine(Context context, BurstRecorder recorder, long refractory) {
+		this.context = context;
+		this.recorder = recorder;
+		this.refractory = refractory * 1000000;
+	}
+
+	/**
+	 * Zaregistruje prijemce broadcastu a posluchace hovoru. Musi byt volano
+	 * z vlakna s Looper (posluchac hovoru).
+	 */
+	public void start() {
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(Intent.ACTION_SCREEN_ON);
+		filter.addAction(Intent.ACTION_SCREEN_OFF);
+		filter.addAction(WifiManager.NETWORK_STATE_CHANGED_ACTION);
+		context.registerReceiver(receiver, filter);
+
+		TelephonyManager mgr = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+		mgr.listen(phoneListener, PhoneStateListener.LISTEN_CALL_STATE);
+	}
+
+	/**
+	 * Odstrani prijemce broadcastu a posluchace hovoru
+	 */
+	public void stop() {
+		context.unregisterReceiver(receiver);
+
+		TelephonyManager mgr = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+		mgr.listen(phoneListener, PhoneStateListener.LISTEN_NONE);
+	}
+
+	/**
+	 * Nastavi posluchace spusteni davky
+	 * @param listener Posluchac nebo null
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Zpracuje davku hodnot celkove akcelerace. Nevytvari zadne objekty.
+	 * Pri zmene miry pohybu jsou do zaznamu nejprve pridany hodnoty az po
+	 * konec okna, davka tedy zacne ve spravnem case.
+	 * @param times Casy udalosti senzoru (ns)
+	 * @param magnitudes Celkove akcelerace
+	 * @param count Pocet hodnot
+	 */
+	public void onMotion(long[] times, float[] magnitudes, int count) {
+		int from = 0;
+
+		for (int i = 0; i < count; i++) {
+			if ((windowCount > 0) && ((times[i] - windowStart) >= MOTION_WINDOW)) {
+				if (closeWindow() && (windowLast >= motionAllowed)) {
+					recorder.add(BurstRecorder.MOTION, times, magnitudes, from, i);
+					from = i;
+					if (fire(MOTION, false, windowLast))
+						motionAllowed = windowLast + recorder.getDuration() * 1000000 + refractory;
+				}
+				windowCount = 0;
+				// Mezera v hodnotach (spanek mezi kroky), okna pred a po ni na sebe nenavazuji
+				if ((times[i] - windowLast) >= MOTION_WINDOW)
+					detector.restart();
+			}
+
+			if (windowCount == 0) {
+				windowStart = times[i];
+				windowSum = 0.0;
+				windowSum2 = 0.0;
+			}
+			windowLast = times[i];
+			windowCount++;
+			windowSum += magnitudes[i];
+			windowSum2 += magnitudes[i] * magnitudes[i];
+		}
+
+		recorder.add(BurstRecorder.MOTION, times, magnitudes, from, count);
+	}
+
+	/**
+	 * Uzavre okno miry pohybu a preda jeho smerodatnou odchylku detekci
+	 * zmeny. Okno s malo hodnotami (napr. pred uspanim) se nepouzije.
+	 * @return true, pokud byla zjistena zmena miry pohybu
+	 */
+	private boolean closeWindow() {
+		if (windowCount < MOTION_WINDOW_MIN)
+			return false;
+
+		double mean = windowSum / windowCount;
+		double var = Math.max(0.0, windowSum2 / windowCount - mean * mean);
+
+		return detector.add(Math.sqrt(var));
+	}
+
+	/**
+	 * Zpracuje davku hodnot svetla
+	 * @param times Casy udalosti senzoru (ns)
+	 * @param levels Urovne svetla
+	 * @param count Pocet hodnot
+	 */
+	public void onLight(long[] times, float[] levels, int count) {
+		recorder.add(BurstRecorder.LIGHT, times, levels, 0, count);
+	}
+
+	/**
+	 * Porovna stav nacteneho vzorku s poslednim znamym stavem. Zachyti
+	 * zmeny, o kterych system neposlal broadcast.
+	 * @param sample Nacteny vzorek
+	 */
+	public void check(Sample sample) {
+		onScreen(sample.screen);
+		onCall(sample.call);
+		onAp(sample.apMac);
+	}
+
+	/**
+	 * Zpracuje stav obrazovky
+	 */
+	private void onScreen(int state) {
+		int last;
+
+		synchronized (this) {
+			last = screen;
+			screen = state;
+		}
+		if ((last >= 0) && (last != state))
+			fire(SCREEN, true, -1);
+	}
+
+	/**
+	 * Zpracuje stav hovoru
+	 */
+	private void onCall(int state) {
+		int last;
+
+		synchronized (this) {
+			last = call;
+			call = state;
+		}
+		if ((last >= 0) && (last != state))
+			fire(CALL, true, -1);
+	}
+
+	/**
+	 * Zpracuje pripojeny AP
+	 */
+	private void onAp(long mac) {
+		long last;
+
+		synchronized (this) {
+			last = apMac;
+			apMac = mac;
+		}
+		if ((last >= 0) && (last != mac))
+			fire(AP, true, -1);
+	}
+
+	/**
+	 * Spusti nebo prodlouzi davku a informuje posluchace
+	 * @param time Cas udalosti v case senzoru (ns) nebo -1, pokud neni znam
+	 * @return true, pokud davka zacala nebo byla prodlouzena
+	 */
+	private boolean fire(int reason, boolean extend, long time) {
+		Listener l = listener;
+
+		if (!((time < 0) ? recorder.trigger(reason, extend) : recorder.trigger(reason, extend, time)))
+			return false;
+
+		if (l != null)
+			l.onTrigger(reason);
+
+		return true;
+	}
+
+}
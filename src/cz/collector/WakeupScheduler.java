@@ -0,0 +1,212 @@
+package cz.collector;
+
+/**
+ * Planuje pravidelne kroky sberu pomoci probuzeni zarizeni. Mezi kroky muze
+ * zarizeni spat, kazdy krok je ohranicen volanim onAlarm() a tickDone(), mezi
+ * kterymi je zarizeni vzhure. Doba probuzeni kazdeho kroku se zapocitava do
+ * statistik. Dalsi probuzeni je naplanovano hned na zacatku kroku, takze
+ * delka kroku neposouva pravidelny interval.
+ * @author Lukas Ambroz
+ */
+public class WakeupScheduler {
+
+	/** Vysledek onAlarm(): krok byl spusten */
+	public static final int STARTED = 0;
+	/** Vysledek onAlarm(): predchozi krok dosud neskoncil */
+	public static final int OVERLAP = 1;
+	/** Vysledek onAlarm(): planovani nebezi */
+	public static final int STOPPED = 2;
+
+	/**
+	 * Ukol spousteny pri kazdem probuzeni
+	 */
+	public interface Task {
+		/**
+		 * Vola se pri probuzeni. Po dokonceni kroku (i v jinem vlakne) musi
+		 * byt zavolano WakeupScheduler.tickDone().
+		 */
+		void onTick();
+	}
+
+	/** Hodiny pro planovani probuzeni */
+	private AlarmClock clock;
+	/** Ukol spousteny pri probuzeni */
+	private Task task;
+	/** Interval mezi probuzenimi (ms) */
+	private long period;
+
+	/** Priznak naplanovaneho sberu */
+	private boolean running = false;
+	/** Cas dalsiho probuzeni */
+	private long nextAt = 0;
+	/** Cas zacatku probihajiciho kroku (-1, pokud krok neprobiha) */
+	private long tickStart = -1;
+
+	/** Cas spusteni planovani */
+	private long startedAt = 0;
+	/** Pocet dokoncenych kroku */
+	private int ticks = 0;
+	/** Pocet probuzeni, ktera nastala behem probihajiciho kroku */
+	private int overlaps = 0;
+	/** Celkova doba probuzeni (ms) */
+	private long awakeTotal = 0;
+	/** Doba probuzeni posledniho kroku (ms) */
+	private long awakeLast = 0;
+	/** Nejdelsi doba probuzeni jednoho kroku (ms) */
+	private long awakeMax = 0;
+
+	/**
+	 * @param clock Hodiny pro planovani probuzeni
+	 * @param period Interval mezi probuzenimi (ms)
+	 * @param task Ukol spousteny pri probuzeni
+	 */
+	public WakeupScheduler(AlarmClock clock, long period, Task task) {
+		this.clock = clock;
+		this.period = period;
+		this.task = task;
+	}
+
+	/**
+	 * Spusti planovani, prvni probuzeni nastane po zadane dobe
+	 * @param delay Doba do prvniho probuzeni (ms)
+	 */
+	synchronized public void start(long delay) {
+		running = true;
+		startedAt = clock.now();
+		nextAt = startedAt + delay;
+		clock.schedule(nextAt);
+	}
+
+	/**
+	 * Zastavi planovani a zrusi naplanovane probuzeni
+	 */
+	synchronized public void stop() {
+		running = false;
+		clock.cancel();
+	}
+
+	/**
+	 * Vola se pri probuzeni. Naplanuje dalsi probuzeni a spusti krok.
+	 * @return STARTED, pokud byl krok spusten, OVERLAP, pokud predchozi krok
+	 * dosud neskoncil (zarizeni musi zustat vzhure do jeho dokonceni), nebo
+	 * STOPPED, pokud planovani nebezi
+	 */
+	public int onAlarm() {
+		synchronized (this) {
+			if (!running)
+				return STOPPED;
+
+			long now = clock.now();
+
+			// Zmeskana probuzeni (napr. pri dlouhem kroku) se nedohaneji
+			nextAt += period;
+			if (nextAt <= now)
+				nextAt = now + period;
+			clock.schedule(nextAt);
+
+			if (tickStart >= 0) {
+				overlaps++;
+				return OVERLAP;
+			}
+
+			tickStart = now;
+		}
+
+		task.onTick();
+
+		return STARTED;
+	}
+
+	/**
+	 * Vola se po dokonceni kroku, zapocita dobu probuzeni
+	 */
+	synchronized public void tickDone() {
+		if (tickStart < 0)
+			return;
+
+		awakeLast = clock.now() - tickStart;
+		awakeTotal += awakeLast;
+		if (awakeLast > awakeMax)
+			awakeMax = awakeLast;
+		ticks++;
+		tickStart = -1;
+	}
+
+	/**
+	 * Zmeni interval mezi probuzenimi. Pokud by s novym intervalem nastalo
+	 * probuzeni drive nez naplanovane, je preplanovano, jinak se zmena
+	 * projevi od pristiho probuzeni.
+	 * @param period Interval (ms)
+	 */
+	synchronized public void setPeriod(long period) {
+		this.period = period;
+
+		long now = clock.now();
+		if (running && ((now + period) < nextAt)) {
+			nextAt = now + period;
+			clock.schedule(nextAt);
+		}
+	}
+
+	/**
+	 * Vrati interval mezi probuzenimi
+	 * @return Interval (ms)
+	 */
+	synchronized public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Vrati pocet dokoncenych kroku
+	 * @return Pocet kroku
+	 */
+	synchronized public int getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * Vrati pocet probuzeni vynechanych kvuli probihajicimu kroku
+	 * @return Pocet vynechanych probuzeni
+	 */
+	synchronized public int getOverlaps() {
+		return overlaps;
+	}
+
+	/**
+	 * Vrati dobu probuzeni posledniho kroku
+	 * @return Doba (ms)
+	 */
+	synchronized public long getAwakeLast() {
+		return awakeLast;
+	}
+
+	/**
+	 * Vrati nejdelsi dobu probuzeni jednoho kroku
+	 * @return Doba (ms)
+	 */
+	synchronized public long getAwakeMax() {
+		return awakeMax;
+	}
+
+	/**
+	 * Vrati celkovou dobu probuzeni
+	 * @return Doba (ms)
+	 */
+	synchronized public long getAwakeTotal() {
+		return awakeTotal;
+	}
+
+	/**
+	 * Vrati podil doby probuzeni na celkove dobe planovani
+	 * @return Podil v rozsahu 0 az 1
+	 */
+	synchronized public float getAwakeRatio() {
+		long elapsed = clock.now() - startedAt;
+
+		if (elapsed <= 0)
+			return 0.0F;
+
+		return (float) awakeTotal / elapsed;
+	}
+
+}
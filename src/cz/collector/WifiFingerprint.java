@@ -0,0 +1,123 @@
+package cz.collector;
+
+import java.io.File;
+import java.util.List;
+
+import android.content.Context;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiManager;
+
+/**
+ * Vytvari otisk okolnich wifi site z vysledku skenovani. Otisk obsahuje
+ * nejvyse TOP_N nejsilnejsich AP, ktere jsou misto MAC adres oznaceny
+ * identifikatory ze slovniku BssidDictionary. Skenovani je spousteno pri
+ * kazdem scanTicks-tem nacteni dat, vysledky jsou prevzaty pri nasledujicim
+ * skenovani. Cetnost skenovani tak sleduje periodu kroku sberu (behem davky
+ * se skenuje casteji).
+ * @author Lukas Ambroz
+ */
+public class WifiFingerprint {
+
+	/** Nejvyssi pocet AP v otisku */
+	private final int TOP_N = 5;
+
+	/** Objekt poskytujici sluzby spojene s wifi */
+	private WifiManager wifiManager;
+	/** Slovnik MAC adres AP */
+	private BssidDictionary dictionary;
+	/** Pocet nacteni dat mezi skenovanim */
+	private int scanTicks;
+
+	/** Identifikatory AP v poslednim otisku serazene podle sily signalu */
+	private int[] ids = new int[TOP_N];
+	/** Sila signalu AP v poslednim otisku (dBm) */
+	private int[] levels = new int[TOP_N];
+	/** Pocet AP v poslednim otisku */
+	private int count = 0;
+	/** Posledni otisk jako retezec */
+	private String fingerprint = "";
+	/** Pocet nacteni dat od posledniho spusteni skenovani */
+	private int ticks = 0;
+	/** Priznak spusteneho skenovani, jehoz vysledky jeste nebyly prevzaty */
+	private boolean scanPending = false;
+
+	/**
+	 * Konstruktor nacte slovnik MAC adres AP
+	 * @param context Rodicovska sluzba nebo aktivita
+	 * @param file Soubor pro ulozeni slovniku MAC adres
+	 * @param scanTicks Pocet nacteni dat mezi skenovanim (alespon 1)
+	 */
+	public WifiFingerprint(Context context, File file, int scanTicks) {
+		wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+		dictionary = new BssidDictionary(file);
+		this.scanTicks = Math.max(scanTicks, 1);
+	}
+
+	/**
+	 * Vrati otisk okolnich wifi site ve tvaru id:dBm;id:dBm...
+	 * Vola se jednou pri kazdem nacteni dat. Pri kazdem scanTicks-tem volani
+	 * prevezme vysledky predchoziho skenovani a spusti skenovani nove, jinak
+	 * vrati predchozi otisk.
+	 * @return Otisk wifi site nebo prazdny retezec
+	 */
+	public String getFingerprint() {
+		if (scanPending && (++ticks < scanTicks))
+			return fingerprint;
+
+		if (scanPending)
+			update(wifiManager.getScanResults());
+
+		ticks = 0;
+		scanPending = wifiManager.startScan();
+
+		return fingerprint;
+	}
+
+	/**
+	 * Zapise do slovniku nove AP
+	 */
+	public void flush() {
+		dictionary.flush();
+	}
+
+	/**
+	 * Vybere z vysledku skenovani TOP_N nejsilnejsich AP a sestavi otisk
+	 * @param results Vysledky skenovani
+	 */
+	private void update(List<ScanResult> results) {
+		count = 0;
+
+		if (results != null) {
+			for (int r = 0; r < results.size(); r++) {
+				ScanResult result = results.get(r);
+				int level = result.level;
+
+				if ((count == TOP_N) && (level <= levels[count - 1]))
+					continue;
+
+				int id = dictionary.intern(BssidDictionary.macToLong(result.BSSID));
+				if (id == BssidDictionary.UNKNOWN)
+					continue;
+
+				// Zarazeni do serazeneho pole, nejslabsi AP pripadne vypadne
+				int i = (count < TOP_N) ? count++ : count - 1;
+				while ((i > 0) && (levels[i - 1] < level)) {
+					ids[i] = ids[i - 1];
+					levels[i] = levels[i - 1];
+					i--;
+				}
+				ids[i] = id;
+				levels[i] = level;
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				sb.append(';');
+			sb.append(ids[i]).append(':').append(levels[i]);
+		}
+		fingerprint = sb.toString();
+	}
+
+}
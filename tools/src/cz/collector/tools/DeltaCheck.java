@@ -0,0 +1,172 @@
+package cz.collector.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+
+import cz.collector.Schema;
+
+/**
+ * Kontrola zmenovych radku (viz DeltaEncoder). Vytvori dva synteticke
+ * soubory se stejnymi vzorky, jeden se zmenovymi radky a jeden pouze
+ * s uplnymi radky, a overi, ze rekonstrukce zmenovych radku (RowDecoder)
+ * dava radek po radku stejne uplne radky a ze FeatureTool z obou souboru
+ * spocita stejne tabulky priznaku bez vynechanych radku. Soubory se deli
+ * mezi vlakna na jinych radcich, soucty se proto scitaji v jinem poradi
+ * a cisla v tabulkach se mohou lisit v poslednim miste.
+ *
+ * Pouziti: DeltaCheck [pocet radku]
+ * @author Lukas Ambroz
+ */
+public class DeltaCheck {
+
+	/** Vychozi pocet radku */
+	private static final long ROWS = 400000;
+	/** Povolena relativni odchylka cisel v tabulkach priznaku */
+	private static final double TOLERANCE = 1e-5;
+
+	/**
+	 * Porovna rekonstruovane radky obou souboru
+	 * @return Pocet shodnych radku dat nebo -1 pri prvni neshode
+	 */
+	static long compare(File delta, File full) throws IOException {
+		BufferedReader a = new BufferedReader(new FileReader(delta));
+		BufferedReader b = new BufferedReader(new FileReader(full));
+		RowDecoder decoder = null;
+		long rows = 0;
+
+		try {
+			String line;
+			while ((line = a.readLine()) != null) {
+				String expected = b.readLine();
+
+				if (line.startsWith(Schema.COLUMNS_PREFIX)) {
+					Schema.Column[] columns = Schema.parseColumns(line);
+					decoder = (columns != null) ? new RowDecoder(columns.length) : null;
+				}
+				if (line.startsWith("#")) {
+					// Hlavicky se lisi jen nastavenim keyframe
+					if ((expected == null) || !expected.startsWith("#"))
+						return mismatch(rows, line, expected);
+					continue;
+				}
+
+				if ((decoder == null) || !decoder.apply(line) || !decoder.row().equals(expected))
+					return mismatch(rows, line, expected);
+				rows++;
+			}
+
+			if (b.readLine() != null)
+				return mismatch(rows, null, "extra rows in " + full);
+		} finally {
+			a.close();
+			b.close();
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Vypise prvni neshodu
+	 */
+	private static long mismatch(long row, String line, String expected) {
+		System.err.println("Row " + row + " differs:\n  " + line + "\n  " + expected);
+		return -1;
+	}
+
+	/**
+	 * Vrati vsechny tabulky priznaku souboru jako text
+	 */
+	static String features(FeatureTool tool, File file, long[] counts) throws IOException {
+		Features features = tool.process(Collections.singletonList(file));
+		StringWriter text = new StringWriter();
+		PrintWriter out = new PrintWriter(text);
+
+		features.printByLabel(out);
+		features.printByDayPart(out);
+		features.printByPlace(out);
+		out.flush();
+		counts[0] = features.rows;
+		counts[1] = features.skipped;
+
+		return text.toString();
+	}
+
+	/**
+	 * Porovna tabulky priznaku pole po poli, cisla s relativni odchylkou
+	 * nejvyse TOLERANCE
+	 * @return true, pokud se tabulky shoduji
+	 */
+	static boolean sameFeatures(String a, String b) {
+		String[] linesA = a.split("\n");
+		String[] linesB = b.split("\n");
+
+		if (linesA.length != linesB.length)
+			return false;
+
+		for (int i = 0; i < linesA.length; i++) {
+			String[] fieldsA = linesA[i].split(",", -1);
+			String[] fieldsB = linesB[i].split(",", -1);
+
+			if (fieldsA.length != fieldsB.length)
+				return false;
+			for (int f = 0; f < fieldsA.length; f++) {
+				if (fieldsA[f].equals(fieldsB[f]))
+					continue;
+				try {
+					double x = Double.parseDouble(fieldsA[f]);
+					double y = Double.parseDouble(fieldsB[f]);
+					if (Math.abs(x - y) > TOLERANCE * Math.max(Math.abs(x), Math.abs(y)))
+						return false;
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	public static void main(String[] args) throws IOException {
+		long rows = (args.length > 0) ? Long.parseLong(args[0]) : ROWS;
+		File delta = File.createTempFile("collector-delta", ".csv");
+		File full = File.createTempFile("collector-full", ".csv");
+		boolean ok = true;
+
+		try {
+			FeatureBench.generate(delta, Long.MAX_VALUE, rows, FeatureBench.KEYFRAME);
+			FeatureBench.generate(full, Long.MAX_VALUE, rows, 1);
+			System.out.printf("rows=%d delta=%.1f MB full=%.1f MB%n", rows,
+					delta.length() / (1024.0 * 1024.0), full.length() / (1024.0 * 1024.0));
+
+			long matched = compare(delta, full);
+			System.out.println("decoded rows matching full rows: " + Math.max(matched, 0) + "/" + rows);
+			ok &= (matched == rows);
+
+			FeatureTool tool = new FeatureTool(Runtime.getRuntime().availableProcessors());
+			long[] deltaCounts = new long[2];
+			long[] fullCounts = new long[2];
+			String deltaFeatures = features(tool, delta, deltaCounts);
+			String fullFeatures = features(tool, full, fullCounts);
+			tool.shutdown();
+
+			boolean same = sameFeatures(deltaFeatures, fullFeatures);
+			System.out.println("FeatureTool: delta rows=" + deltaCounts[0] + " skipped=" + deltaCounts[1]
+					+ ", full rows=" + fullCounts[0] + " skipped=" + fullCounts[1]
+					+ ", tables " + (same ? "match" : "differ"));
+			ok &= same && (deltaCounts[0] == rows) && (deltaCounts[1] == 0) && (fullCounts[1] == 0);
+		} finally {
+			delta.delete();
+			full.delete();
+		}
+
+		System.out.println(ok ? "OK" : "FAILED");
+		if (!ok)
+			System.exit(1);
+	}
+
+}
@@ -0,0 +1,382 @@
+package cz.collector.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import cz.collector.BlockIndex;
+import cz.collector.BssidDictionary;
+import cz.collector.Sample;
+import cz.collector.Schema;
+
+/**
+ * Nastroj prikazove radky pro vyber radku souboru data.csv podle zpravy,
+ * pripojeneho AP, casoveho rozsahu, obdelniku polohy a hodnot vyctovych
+ * sloupcu. Radky bez polohy (0, 0) podmince polohy neodpovidaji. Bloky
+ * souboru, ktere hledane radky podle indexu (viz BlockIndex) jiste
+ * neobsahuji, nejsou vubec cteny. Cast souboru bez indexu je prectena cela.
+ * Vybrane radky jsou vypsany jako uplne radky s hlavickami sve casti
+ * souboru. Radky souboru bez hlavicky (starsi format) nejsou vybirany.
+ *
+ * Pouziti: ExportTool [-label zprava] [-ap mac] [-from ms] [-to ms]
+ * [-box minLat,maxLat,minLon,maxLon] [-is sloupec=hodnota]... [-out soubor] data.csv
+ * @author Lukas Ambroz
+ */
+public class ExportTool {
+
+	/** Velikost bufferu pro cteni */
+	private static final int READ_SIZE = 64 * 1024;
+
+	/** Hledana zprava (null pro libovolnou) */
+	private String label = null;
+	/** Hledany pripojeny AP (0 pro libovolny) */
+	private long bssid = 0;
+	/** Casovy rozsah (ms) */
+	private long from = Long.MIN_VALUE;
+	private long to = Long.MAX_VALUE;
+	/** Obdelnik polohy (minLat, maxLat, minLon, maxLon) nebo null pro libovolnou polohu */
+	private double[] box = null;
+	/** Hledane hodnoty vyctovych sloupcu (Sample.COL_*) */
+	private List<Integer> enumColumns = new ArrayList<Integer>();
+	/** Hledane hodnoty vyctovych sloupcu */
+	private List<String> enumValues = new ArrayList<String>();
+
+	/** Vystup */
+	private PrintWriter out;
+	/** Soubor dat */
+	private RandomAccessFile raf;
+	/** Buffer pro cteni */
+	private byte[] buf = new byte[READ_SIZE];
+
+	/** Aktualni hlavicka (dva radky) nebo null */
+	private String header = null;
+	/** Posledni vypsana hlavicka */
+	private String written = null;
+	/** Sloupce aktualni hlavicky */
+	private Schema.Column[] columns = null;
+	/** Dekoder radku aktualni hlavicky */
+	private RowDecoder decoder = null;
+	/** Pozice hledanych sloupcu v aktualni hlavicce */
+	private int timeCol;
+	private int labelCol;
+	private int apCol;
+	private int latCol;
+	private int lonCol;
+	private int[] enumCols;
+
+	/** Statistiky */
+	long blocks = 0;
+	long skippedBlocks = 0;
+	long bytesRead = 0;
+	long rows = 0;
+	long matched = 0;
+
+	/**
+	 * Prida podminku na hodnotu vyctoveho sloupce
+	 * @param condition Podminka ve tvaru sloupec=hodnota
+	 */
+	void addCondition(String condition) {
+		int eq = condition.indexOf('=');
+		int col = (eq > 0) ? Schema.indexOf(Schema.COLUMNS, condition.substring(0, eq)) : -1;
+
+		if ((col < 0) || !"enum".equals(Schema.COLUMNS[col].type))
+			throw new IllegalArgumentException("Not an enum column: " + condition);
+
+		enumColumns.add(col);
+		enumValues.add(condition.substring(eq + 1));
+	}
+
+	/**
+	 * Nastavi obdelnik polohy
+	 * @param bounds Obdelnik ve tvaru minLat,maxLat,minLon,maxLon
+	 */
+	void setBox(String bounds) {
+		String[] parts = bounds.split(",");
+
+		if (parts.length != 4)
+			throw new IllegalArgumentException("Expected minLat,maxLat,minLon,maxLon: " + bounds);
+
+		box = new double[4];
+		for (int i = 0; i < 4; i++)
+			box[i] = Double.parseDouble(parts[i]);
+	}
+
+	/**
+	 * Vypise vybrane radky souboru
+	 * @param file Soubor dat
+	 * @param index Soubor indexu
+	 * @param out Vystup
+	 * @throws IOException Pri chybe cteni
+	 */
+	void export(File file, File index, PrintWriter out) throws IOException {
+		List<BlockIndex.ZoneMap> zones = BlockIndex.read(index);
+		long length = file.length();
+		long pos = 0;
+
+		this.out = out;
+		raf = new RandomAccessFile(file, "r");
+		try {
+			for (BlockIndex.ZoneMap zone : zones) {
+				// Zaznamy, ktere neodpovidaji souboru, jsou ignorovany
+				if ((zone.offset < pos) || (zone.offset + zone.length > length))
+					continue;
+
+				// Cast souboru pred blokem bez indexu
+				if (zone.offset > pos)
+					read(pos, zone.offset);
+
+				blocks++;
+				if (matches(zone)) {
+					if (zone.headerOffset != zone.offset)
+						readHeader(zone.headerOffset);
+					read(zone.offset, zone.offset + zone.length);
+				} else {
+					skippedBlocks++;
+				}
+				pos = zone.offset + zone.length;
+			}
+
+			if (pos < length)
+				read(pos, length);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Vrati, zda blok muze obsahovat hledane radky
+	 */
+	private boolean matches(BlockIndex.ZoneMap zone) {
+		if (!zone.overlaps(from, to))
+			return false;
+		if ((label != null) && !zone.mayContainMessage(label))
+			return false;
+		if ((bssid != 0) && !zone.mayContainBssid(bssid))
+			return false;
+		if ((box != null) && !zone.mayContain(box[0], box[1], box[2], box[3]))
+			return false;
+
+		for (int i = 0; i < enumColumns.size(); i++) {
+			int col = enumColumns.get(i);
+			int code = Sample.codeOf(Schema.COLUMNS[col].unit.split("\\|"), enumValues.get(i));
+			if ((code < 0) || !zone.mayContainCode(col, code))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Nacte hlavicku useku souboru na zadane pozici
+	 */
+	private void readHeader(long offset) throws IOException {
+		raf.seek(offset);
+		String first = raf.readLine();
+		String second = raf.readLine();
+
+		if ((first != null) && (second != null))
+			setHeader(first, second);
+	}
+
+	/**
+	 * Nastavi hlavicku a pozice hledanych sloupcu
+	 */
+	private void setHeader(String first, String second) {
+		String value = first + "\n" + second;
+		if (value.equals(header))
+			return;
+
+		Schema.Column[] parsed = Schema.parseColumns(second);
+		if (parsed == null)
+			return;
+
+		header = value;
+		columns = parsed;
+		decoder = new RowDecoder(columns.length);
+		timeCol = Schema.indexOf(columns, "ts");
+		labelCol = Schema.indexOf(columns, "message");
+		apCol = Schema.indexOf(columns, "ap");
+		latCol = Schema.indexOf(columns, "lat");
+		lonCol = Schema.indexOf(columns, "lon");
+		enumCols = new int[enumColumns.size()];
+		for (int i = 0; i < enumCols.length; i++)
+			enumCols[i] = Schema.indexOf(columns, Schema.COLUMNS[enumColumns.get(i)].name);
+	}
+
+	/**
+	 * Precte a zpracuje radky zadane casti souboru, ktera zacina
+	 * klicovym radkem nebo hlavickou
+	 */
+	private void read(long start, long end) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+		String pending = null;
+
+		if (decoder != null)
+			decoder.reset();
+
+		raf.seek(start);
+		long pos = start;
+		while (pos < end) {
+			int n = raf.read(buf, 0, (int) Math.min(buf.length, end - pos));
+			if (n < 0)
+				break;
+			bytesRead += n;
+			pos += n;
+
+			for (int i = 0; i < n; i++) {
+				if (buf[i] != '\n') {
+					line.write(buf[i]);
+					continue;
+				}
+
+				pending = row(line.toString("UTF-8").trim(), pending);
+				line.reset();
+			}
+		}
+
+		if (line.size() > 0)
+			row(line.toString("UTF-8").trim(), pending);
+	}
+
+	/**
+	 * Zpracuje jeden radek
+	 * @param line Radek
+	 * @param pending Prvni radek rozpracovane hlavicky nebo null
+	 * @return Prvni radek rozpracovane hlavicky nebo null
+	 */
+	private String row(String line, String pending) {
+		if (line.length() == 0)
+			return pending;
+
+		if (line.charAt(0) == '#') {
+			if (line.startsWith(Schema.HEADER_PREFIX))
+				return line;
+			if ((pending != null) && line.startsWith(Schema.COLUMNS_PREFIX))
+				setHeader(pending, line);
+			if (decoder != null)
+				decoder.reset();
+			return null;
+		}
+
+		rows++;
+		if ((decoder == null) || !decoder.apply(line))
+			return null;
+
+		if (accept()) {
+			if (!header.equals(written)) {
+				out.println(header);
+				written = header;
+			}
+			out.println(decoder.row());
+			matched++;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Vrati, zda posledni rekonstruovany radek odpovida podminkam
+	 */
+	private boolean accept() {
+		if (timeCol >= 0) {
+			long time;
+			try {
+				time = Long.parseLong(decoder.get(timeCol));
+			} catch (NumberFormatException nfe) {
+				return false;
+			}
+			if ((time < from) || (time > to))
+				return false;
+		}
+		if ((label != null) && ((labelCol < 0) || !label.equals(decoder.get(labelCol))))
+			return false;
+		if ((bssid != 0) && ((apCol < 0) || (BssidDictionary.macToLong(decoder.get(apCol)) != bssid)))
+			return false;
+		if ((box != null) && !inBox())
+			return false;
+
+		for (int i = 0; i < enumCols.length; i++) {
+			if ((enumCols[i] < 0) || !enumValues.get(i).equals(decoder.get(enumCols[i])))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Vrati, zda ma posledni rekonstruovany radek polohu v obdelniku
+	 */
+	private boolean inBox() {
+		if ((latCol < 0) || (lonCol < 0))
+			return false;
+
+		double lat;
+		double lon;
+		try {
+			lat = Double.parseDouble(decoder.get(latCol));
+			lon = Double.parseDouble(decoder.get(lonCol));
+		} catch (NumberFormatException nfe) {
+			return false;
+		}
+
+		// Radek bez polohy
+		if ((lat == 0.0) && (lon == 0.0))
+			return false;
+
+		return (lat >= box[0]) && (lat <= box[1]) && (lon >= box[2]) && (lon <= box[3]);
+	}
+
+	public static void main(String[] args) throws IOException {
+		ExportTool tool = new ExportTool();
+		File file = null;
+		File output = null;
+
+		for (int i = 0; i < args.length; i++) {
+			if ("-label".equals(args[i]) && (i + 1 < args.length))
+				tool.label = args[++i];
+			else if ("-ap".equals(args[i]) && (i + 1 < args.length))
+				tool.bssid = BssidDictionary.macToLong(args[++i].toLowerCase());
+			else if ("-from".equals(args[i]) && (i + 1 < args.length))
+				tool.from = Long.parseLong(args[++i]);
+			else if ("-to".equals(args[i]) && (i + 1 < args.length))
+				tool.to = Long.parseLong(args[++i]);
+			else if ("-box".equals(args[i]) && (i + 1 < args.length))
+				tool.setBox(args[++i]);
+			else if ("-is".equals(args[i]) && (i + 1 < args.length))
+				tool.addCondition(args[++i]);
+			else if ("-out".equals(args[i]) && (i + 1 < args.length))
+				output = new File(args[++i]);
+			else
+				file = new File(args[i]);
+		}
+
+		if (file == null) {
+			System.err.println("Usage: ExportTool [-label L] [-ap MAC] [-from ms] [-to ms] [-box minLat,maxLat,minLon,maxLon] [-is column=value]... [-out file] data.csv");
+			System.exit(1);
+		}
+
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		File index = new File(file.getParentFile(), ((dot > 0) ? name.substring(0, dot) : name) + ".idx");
+
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(
+				(output != null) ? new FileOutputStream(output) : System.out, "UTF-8"));
+		long start = System.nanoTime();
+		tool.export(file, index, out);
+		long elapsed = System.nanoTime() - start;
+		out.flush();
+		if (output != null)
+			out.close();
+
+		System.err.println(tool.matched + " of " + tool.rows + " rows read, " + tool.skippedBlocks + " of "
+				+ tool.blocks + " blocks skipped, " + tool.bytesRead + " of " + file.length() + " bytes read in "
+				+ (elapsed / 1000000) + " ms");
+	}
+
+}
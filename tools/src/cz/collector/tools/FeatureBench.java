@@ -0,0 +1,196 @@
+package cz.collector.tools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import cz.collector.DeltaEncoder;
+import cz.collector.Sample;
+import cz.collector.Schema;
+
+/**
+ * Mereni propustnosti nastroje FeatureTool. Vytvori synteticky soubor ve
+ * formatu data.csv zadane velikosti a zpracuje ho postupne s 1, 2, 4...
+ * vlakny az do poctu procesoru. Radky jsou zapsany stejne jako v zarizeni,
+ * tedy se zmenovymi radky mezi klicovymi radky. Zadany existujici soubor je
+ * pouzit tak, jak je. Pokud je mensi nez zadana velikost, je prepsan
+ * synteticky soubor pouze s volbou -force.
+ *
+ * Pouziti: FeatureBench [-force] [velikost v MB] [soubor]
+ * @author Lukas Ambroz
+ */
+public class FeatureBench {
+
+	/** Zpravy v syntetickych datech */
+	private static final String[] LABELS = { "home", "work", "walking", "car", "sleeping", "meeting" };
+	/** Nejvyssi pocet radku mezi klicovymi radky */
+	static final int KEYFRAME = 120;
+	/** Pocet radku jednoho useku souboru (tyden sberu po 30 s) */
+	private static final int SESSION_ROWS = 7 * 2880;
+
+	/**
+	 * Vytvori synteticky soubor zadane velikosti
+	 * @param file Cilovy soubor
+	 * @param size Velikost v bajtech
+	 * @throws IOException Pri chybe zapisu
+	 */
+	static void generate(File file, long size) throws IOException {
+		generate(file, size, Long.MAX_VALUE, KEYFRAME);
+	}
+
+	/**
+	 * Vytvori synteticky soubor, ktery konci po dosazeni zadane velikosti
+	 * nebo poctu radku. Stejny pocet radku dava pri libovolnem keyframe
+	 * stejne vzorky. Kazdych SESSION_ROWS radku zacina novy usek souboru
+	 * s hlavickou.
+	 * @param file Cilovy soubor
+	 * @param size Nejvyssi velikost v bajtech
+	 * @param rows Nejvyssi pocet radku
+	 * @param keyframe Nejvyssi pocet radku mezi klicovymi radky (1 pro
+	 * uplne radky)
+	 * @throws IOException Pri chybe zapisu
+	 */
+	static void generate(File file, long size, long rows, int keyframe) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(file), 1 << 20);
+		Random random = new Random(42);
+		Sample sample = new Sample();
+		DeltaEncoder encoder = new DeltaEncoder(keyframe);
+		long written = 0;
+		long time = 1340000000000L;
+
+		try {
+			for (long row = 0; (written < size) && (row < rows); row++) {
+				if ((row % SESSION_ROWS) == 0) {
+					String header = Schema.header(30000, 5000, 8, keyframe);
+					out.write(header);
+					out.write('\n');
+					written += header.length() + 1;
+					encoder.reset();
+				}
+
+				time += 30000;
+				sample.time = time;
+				sample.latitude = 50.08 + random.nextGaussian() * 0.01;
+				sample.longitude = 14.42 + random.nextGaussian() * 0.01;
+				// Stavove sloupce se meni jen obcas
+				if (random.nextInt(200) == 0)
+					sample.profile = (byte) random.nextInt(Sample.PROFILES.length);
+				sample.hour = (int) ((time / 3600000) % 24);
+				sample.dayPart = Sample.dayPartOf(sample.hour);
+				sample.day = (byte) ((time / 86400000 + 4) % 7);
+				sample.weekend = ((sample.day == 0) || (sample.day == 6)) ? Sample.YES : Sample.NO;
+				if (random.nextInt(20) == 0)
+					sample.screen = (byte) random.nextInt(2);
+				sample.appCount = 10 + random.nextInt(20);
+				if (random.nextInt(500) == 0)
+					sample.headset = (byte) random.nextInt(2);
+				sample.call = (random.nextInt(100) == 0) ? Sample.YES : Sample.NO;
+				if (random.nextInt(120) == 0) {
+					sample.apMac = random.nextInt(8) * 0x10203L;
+					sample.place = random.nextInt(5);
+				}
+				sample.wifi = "";
+				if (sample.hour < 7) {
+					// V noci zarizeni lezi v klidu ve tme, senzor svetla nehlasi zmeny
+					sample.motion = 9.81F + (float) random.nextGaussian() * 0.002F;
+					sample.motionMin = sample.motion - 0.03F;
+					sample.motionMax = sample.motion + 0.03F;
+					sample.motionStd = 0.01F;
+					sample.motionMedian = sample.motion;
+					sample.motionP90 = sample.motion + 0.02F;
+					sample.light = 0.0F;
+					sample.lightMin = Float.NaN;
+					sample.lightMax = Float.NaN;
+					sample.lightStd = Float.NaN;
+					sample.lightMedian = Float.NaN;
+					sample.lightP90 = Float.NaN;
+				} else {
+					sample.motion = 9.81F + (float) random.nextGaussian();
+					sample.motionMin = sample.motion - 1.5F;
+					sample.motionMax = sample.motion + 2.5F;
+					sample.motionStd = random.nextFloat();
+					sample.motionMedian = sample.motion;
+					sample.motionP90 = sample.motion + 1.2F;
+					sample.light = random.nextFloat() * 1000.0F;
+					sample.lightMin = sample.light * 0.5F;
+					sample.lightMax = sample.light * 1.5F;
+					sample.lightStd = sample.light * 0.2F;
+					sample.lightMedian = sample.light;
+					sample.lightP90 = sample.light * 1.3F;
+				}
+				sample.message = LABELS[(int) ((time / 3600000) % LABELS.length)];
+				sample.roundStats();
+
+				String line = encoder.encode(sample);
+				out.write(line);
+				out.write('\n');
+				written += line.length() + 1;
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		long megabytes = 2048;
+		File file = null;
+		boolean force = false;
+		int positional = 0;
+
+		for (int i = 0; i < args.length; i++) {
+			if ("-force".equals(args[i]))
+				force = true;
+			else if (positional++ == 0)
+				megabytes = Long.parseLong(args[i]);
+			else
+				file = new File(args[i]);
+		}
+
+		boolean temporary = (file == null);
+		if (temporary) {
+			file = File.createTempFile("collector-bench", ".csv");
+		} else if (file.exists() && (file.length() < megabytes << 20) && !force) {
+			// Zadany soubor muze obsahovat skutecna data, neni tedy prepsan
+			System.err.println(file + " exists and is smaller than " + megabytes
+					+ " MB, use -force to overwrite it with synthetic rows");
+			System.exit(1);
+		}
+
+		try {
+			if (temporary || !file.exists() || (file.length() < megabytes << 20)) {
+				System.err.println("Generating " + megabytes + " MB of synthetic rows into " + file);
+				generate(file, megabytes << 20);
+			}
+
+			List<File> files = Collections.singletonList(file);
+			int processors = Runtime.getRuntime().availableProcessors();
+			double mb = file.length() / (1024.0 * 1024.0);
+
+			for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+				FeatureTool tool = new FeatureTool(threads);
+
+				// Prvni pruchod zahreje JIT a nacte soubor do cache
+				tool.process(files);
+				long start = System.nanoTime();
+				Features features = tool.process(files);
+				double seconds = (System.nanoTime() - start) / 1e9;
+				tool.shutdown();
+
+				System.out.printf("threads=%d rows=%d time=%.2fs throughput=%.1f MB/s%n",
+						threads, features.rows, seconds, mb / seconds);
+
+				if (threads == processors)
+					break;
+			}
+		} finally {
+			if (temporary)
+				file.delete();
+		}
+	}
+
+}
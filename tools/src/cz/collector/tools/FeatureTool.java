@@ -0,0 +1,194 @@
+package cz.collector.tools;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import cz.collector.Schema;
+
+/**
+ * Nastroj prikazove radky pro vypocet priznaku ze souboru data.csv stazenych
+ * ze zarizeni. Soubory jsou namapovany do pameti po usecich nejvyse
+ * SEGMENT_SIZE, useky jsou rozdeleny na hranicich radku a zpracovany
+ * soubezne ve ForkJoinPool. Format radku urcuji hlavicky useku souboru
+ * (viz Schema), soubory bez hlavicky jsou ve starsim formatu. Vysledkem jsou
+ * tabulky priznaku po zpravach, po zpravach a castech dne a po zpravach
+ * a mistech.
+ *
+ * Pouziti: FeatureTool [-threads N] [-out adresar] soubor...
+ * @author Lukas Ambroz
+ */
+public class FeatureTool {
+
+	/** Nejvyssi velikost jednoho namapovaneho useku (1 GB) */
+	static final int SEGMENT_SIZE = 1 << 30;
+
+	/** Soubory tabulek priznaku */
+	private static final String LABEL_FILE_NAME = "features_label.csv";
+	private static final String DAY_PART_FILE_NAME = "features_daypart.csv";
+	private static final String PLACE_FILE_NAME = "features_place.csv";
+
+	/** Fond vlaken pro zpracovani */
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param threads Pocet vlaken pro zpracovani
+	 */
+	public FeatureTool(int threads) {
+		pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Zpracuje zadane soubory a vrati souhrnne priznaky
+	 * @param files Soubory ve formatu data.csv
+	 * @return Souhrnne priznaky
+	 * @throws IOException Pri chybe cteni souboru
+	 */
+	Features process(List<File> files) throws IOException {
+		List<RandomAccessFile> opened = new ArrayList<RandomAccessFile>();
+		List<ForkJoinTask<Features>> tasks = new ArrayList<ForkJoinTask<Features>>();
+		Features result = new Features();
+
+		try {
+			for (File file : files) {
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				opened.add(raf);
+
+				List<MappedByteBuffer> segments = map(raf.getChannel());
+				List<ForkJoinTask<TreeMap<Integer, Layout>>> scans = new ArrayList<ForkJoinTask<TreeMap<Integer, Layout>>>();
+				for (MappedByteBuffer segment : segments)
+					scans.add(pool.submit(new HeaderScan(segment, 0, segment.limit())));
+
+				// Soubor bez hlavicky je ve starsim formatu, dale plati posledni hlavicka
+				Layout layout = Layout.LEGACY;
+				for (int i = 0; i < segments.size(); i++) {
+					MappedByteBuffer segment = segments.get(i);
+					TreeMap<Integer, Layout> headers = scans.get(i).join();
+
+					tasks.add(pool.submit(new ParseTask(segment, 0, segment.limit(), headers, layout)));
+					if (!headers.isEmpty())
+						layout = headers.lastEntry().getValue();
+				}
+			}
+
+			for (ForkJoinTask<Features> task : tasks)
+				result.merge(task.join());
+		} finally {
+			for (RandomAccessFile raf : opened)
+				raf.close();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Ukonci fond vlaken
+	 */
+	void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Namapuje soubor po usecich, ktere konci na hranici radku. Dalsi usek
+	 * zacina uplnym radkem nebo hlavickou, aby sel zpracovat nezavisle.
+	 * @param channel Kanal souboru
+	 * @return Namapovane useky
+	 * @throws IOException Pri chybe mapovani
+	 */
+	static List<MappedByteBuffer> map(FileChannel channel) throws IOException {
+		List<MappedByteBuffer> result = new ArrayList<MappedByteBuffer>();
+		long size = channel.size();
+		long pos = 0;
+
+		while (pos < size) {
+			long length = Math.min(SEGMENT_SIZE, size - pos);
+			MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+
+			// Usek (krome posledniho) je zkracen pred posledni uplny radek
+			int end = (int) length;
+			if ((pos + length) < size) {
+				end = rowStart(segment, end - 1);
+				while ((end > 0) && (segment.get(end) == Schema.DELTA_PREFIX))
+					end = rowStart(segment, end - 1);
+				if (end == 0)
+					throw new IOException("No full row within " + SEGMENT_SIZE + " bytes at offset " + pos);
+				segment.limit(end);
+			}
+
+			result.add(segment);
+			pos += end;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Vrati zacatek radku, ktery obsahuje zadanou pozici
+	 */
+	private static int rowStart(MappedByteBuffer segment, int pos) {
+		while ((pos > 0) && (segment.get(pos - 1) != '\n'))
+			pos--;
+
+		return pos;
+	}
+
+	/**
+	 * Zapise tabulky priznaku do adresare
+	 * @param features Souhrnne priznaky
+	 * @param dir Cilovy adresar
+	 * @throws IOException Pri chybe zapisu
+	 */
+	static void write(Features features, File dir) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(new File(dir, LABEL_FILE_NAME)));
+		features.printByLabel(out);
+		out.close();
+
+		out = new PrintWriter(new FileWriter(new File(dir, DAY_PART_FILE_NAME)));
+		features.printByDayPart(out);
+		out.close();
+
+		out = new PrintWriter(new FileWriter(new File(dir, PLACE_FILE_NAME)));
+		features.printByPlace(out);
+		out.close();
+	}
+
+	public static void main(String[] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		File dir = new File(".");
+		List<File> files = new ArrayList<File>();
+
+		for (int i = 0; i < args.length; i++) {
+			if ("-threads".equals(args[i]) && (i + 1 < args.length))
+				threads = Integer.parseInt(args[++i]);
+			else if ("-out".equals(args[i]) && (i + 1 < args.length))
+				dir = new File(args[++i]);
+			else
+				files.add(new File(args[i]));
+		}
+
+		if (files.isEmpty()) {
+			System.err.println("Usage: FeatureTool [-threads N] [-out dir] data.csv...");
+			System.exit(1);
+		}
+
+		FeatureTool tool = new FeatureTool(threads);
+		long start = System.nanoTime();
+		Features features = tool.process(files);
+		long elapsed = System.nanoTime() - start;
+		tool.shutdown();
+
+		write(features, dir);
+		System.err.println(features.rows + " rows (" + features.skipped + " skipped) in "
+				+ (elapsed / 1000000) + " ms using " + threads + " threads");
+	}
+
+}
@@ -0,0 +1,261 @@
+package cz.collector.tools;
+
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import cz.collector.Sample;
+
+/**
+ * Souhrnne priznaky vypocitane z radku souboru data.csv. Radky jsou
+ * agregovany podle zpravy, casti dne a mista, souhrny po zpravach, po
+ * castech dne a po mistech jsou odvozeny az pri vypisu. Objekty vznikle
+ * v jednotlivych vlaknech se spojuji metodou merge().
+ * @author Lukas Ambroz
+ */
+class Features {
+
+	/**
+	 * Souhrnne hodnoty jedne skupiny radku
+	 */
+	static class Stats {
+		long count = 0;
+		final Moments motion = new Moments();
+		final Moments light = new Moments();
+		double appCount = 0.0;
+		long screenOn = 0;
+		long call = 0;
+		long headset = 0;
+
+		void merge(Stats other) {
+			count += other.count;
+			motion.merge(other.motion);
+			light.merge(other.light);
+			appCount += other.appCount;
+			screenOn += other.screenOn;
+			call += other.call;
+			headset += other.headset;
+		}
+	}
+
+	/**
+	 * Pocet, soucty a extremy jedne ciselne hodnoty
+	 */
+	static class Moments {
+		long count = 0;
+		double sum = 0.0;
+		double sumSq = 0.0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+
+		void add(double value) {
+			if (Double.isNaN(value))
+				return;
+
+			count++;
+			sum += value;
+			sumSq += value * value;
+			if (value < min)
+				min = value;
+			if (value > max)
+				max = value;
+		}
+
+		void merge(Moments other) {
+			count += other.count;
+			sum += other.sum;
+			sumSq += other.sumSq;
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+		}
+
+		void print(StringBuilder sb) {
+			if (count == 0) {
+				sb.append(",,,,");
+				return;
+			}
+
+			double mean = sum / count;
+			double variance = Math.max(0.0, sumSq / count - mean * mean);
+			sb.append(',').append((float) mean);
+			sb.append(',').append((float) Math.sqrt(variance));
+			sb.append(',').append((float) min);
+			sb.append(',').append((float) max);
+		}
+	}
+
+	/** Hlavicka sloupcu se souhrnnymi hodnotami */
+	private static final String HEADER = ",count,motion_mean,motion_std,motion_min,motion_max"
+			+ ",light_mean,light_std,light_min,light_max,apps_mean,screen_on,call,headset";
+
+	/** Kodovani zprav v souboru */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Zpravy podle identifikatoru */
+	private List<String> labels = new ArrayList<String>();
+	/** Identifikatory zprav */
+	private Map<String, Integer> labelIds = new HashMap<String, Integer>();
+	/** Skupiny podle klice (zprava, cast dne, misto) */
+	private Map<Long, Stats> cells = new HashMap<Long, Stats>();
+
+	/** Celkovy pocet zpracovanych radku */
+	long rows = 0;
+	/** Pocet vynechanych chybnych radku */
+	long skipped = 0;
+
+	/** Identifikator zpravy posledniho radku */
+	private int lastLabel = -1;
+	/** Klic skupiny posledniho radku */
+	private long lastKey = -1;
+	/** Skupina posledniho radku */
+	private Stats lastStats = null;
+
+	/**
+	 * Vrati identifikator zpravy, opakovana zprava se porovnava bez vytvoreni
+	 * retezce
+	 */
+	int label(ByteBuffer buf, int from, int to) {
+		if ((lastLabel >= 0) && Fields.equals(buf, from, to, labels.get(lastLabel)))
+			return lastLabel;
+
+		byte[] bytes = new byte[to - from];
+		for (int i = from; i < to; i++)
+			bytes[i - from] = buf.get(i);
+
+		lastLabel = label(new String(bytes, UTF8));
+
+		return lastLabel;
+	}
+
+	/**
+	 * Vrati identifikator zpravy, nova zprava je pridana
+	 */
+	int label(String name) {
+		Integer id = labelIds.get(name);
+
+		if (id == null) {
+			id = labels.size();
+			labels.add(name);
+			labelIds.put(name, id);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Vrati skupinu pro zadanou zpravu, cast dne a misto
+	 */
+	Stats stats(int label, int dayPart, int place) {
+		long key = ((long) label << 40) | ((long) (dayPart & 0xFF) << 32) | (place & 0xFFFFFFFFL);
+
+		if (key == lastKey)
+			return lastStats;
+
+		Stats stats = cells.get(key);
+		if (stats == null) {
+			stats = new Stats();
+			cells.put(key, stats);
+		}
+
+		lastKey = key;
+		lastStats = stats;
+
+		return stats;
+	}
+
+	/**
+	 * Pripoji souhrny z jineho objektu
+	 * @param other Souhrny zpracovane jinym vlaknem
+	 */
+	void merge(Features other) {
+		rows += other.rows;
+		skipped += other.skipped;
+
+		for (Map.Entry<Long, Stats> entry : other.cells.entrySet()) {
+			long key = entry.getKey();
+			int label = label(other.labels.get((int) (key >>> 40)));
+			int dayPart = (byte) (key >>> 32);
+			int place = (int) key;
+
+			stats(label, dayPart, place).merge(entry.getValue());
+		}
+	}
+
+	/**
+	 * Vypise tabulku priznaku po zpravach
+	 */
+	void printByLabel(PrintWriter out) {
+		out.println("label" + HEADER);
+		print(out, rollUp(false, false));
+	}
+
+	/**
+	 * Vypise tabulku priznaku po zpravach a castech dne
+	 */
+	void printByDayPart(PrintWriter out) {
+		out.println("label,daypart" + HEADER);
+		print(out, rollUp(true, false));
+	}
+
+	/**
+	 * Vypise tabulku priznaku po zpravach a mistech
+	 */
+	void printByPlace(PrintWriter out) {
+		out.println("label,place" + HEADER);
+		print(out, rollUp(false, true));
+	}
+
+	/**
+	 * Spoji skupiny podle zpravy a pripadne casti dne ci mista
+	 */
+	private Map<String, Stats> rollUp(boolean byDayPart, boolean byPlace) {
+		Map<String, Stats> result = new TreeMap<String, Stats>();
+
+		for (Map.Entry<Long, Stats> entry : cells.entrySet()) {
+			long key = entry.getKey();
+			String name = labels.get((int) (key >>> 40));
+			int dayPart = (byte) (key >>> 32);
+
+			if (byDayPart)
+				name += "," + ((dayPart >= 0) ? Sample.DAY_PARTS[dayPart] : "");
+			if (byPlace)
+				name += "," + (int) key;
+
+			Stats stats = result.get(name);
+			if (stats == null) {
+				stats = new Stats();
+				result.put(name, stats);
+			}
+			stats.merge(entry.getValue());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Vypise radky tabulky
+	 */
+	private static void print(PrintWriter out, Map<String, Stats> table) {
+		StringBuilder sb = new StringBuilder();
+
+		for (Map.Entry<String, Stats> entry : table.entrySet()) {
+			Stats stats = entry.getValue();
+
+			sb.setLength(0);
+			sb.append(entry.getKey()).append(',').append(stats.count);
+			stats.motion.print(sb);
+			stats.light.print(sb);
+			sb.append(',').append((float) (stats.appCount / stats.count));
+			sb.append(',').append((float) stats.screenOn / stats.count);
+			sb.append(',').append((float) stats.call / stats.count);
+			sb.append(',').append((float) stats.headset / stats.count);
+			out.println(sb);
+		}
+	}
+
+}
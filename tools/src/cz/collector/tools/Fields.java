@@ -0,0 +1,212 @@
+package cz.collector.tools;
+
+import java.nio.ByteBuffer;
+
+import cz.collector.Schema;
+
+/**
+ * Cteni hodnot primo z bajtu radku v namapovanem souboru bez vytvareni
+ * retezcu. Vsechny metody pracuji s absolutnimi pozicemi, proto je lze
+ * volat soubezne nad jednim bufferem z vice vlaken.
+ * @author Lukas Ambroz
+ */
+final class Fields {
+
+	/** Mocniny 10 pro prevod desetinnych cisel */
+	private static final double[] POW10 = new double[23];
+
+	static {
+		POW10[0] = 1.0;
+		for (int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10.0;
+	}
+
+	private Fields() {}
+
+	/**
+	 * Rozdeli radek na pole podle carek. Deleni skonci po zadanem poctu poli,
+	 * zbytek radku se neprochazi.
+	 * @param buf Buffer s daty
+	 * @param from Zacatek radku
+	 * @param to Konec radku (bez znaku konce radku)
+	 * @param bounds Pozice zacatku poli, bounds[i + 1] - 1 je konec pole i
+	 * @param max Nejvyssi pocet poli, ktere maji byt nalezeny
+	 * @return Pocet nalezenych poli nebo -1, pokud jich je vice, nez se vejde do bounds
+	 */
+	static int split(ByteBuffer buf, int from, int to, int[] bounds, int max) {
+		int count = 0;
+		bounds[count++] = from;
+
+		for (int i = from; (i < to) && (count < max); i++) {
+			if (buf.get(i) == ',') {
+				if (count == bounds.length - 1)
+					return -1;
+				bounds[count++] = i + 1;
+			}
+		}
+
+		// Konec posledniho nalezeneho pole
+		if (count < max) {
+			bounds[count] = to + 1;
+		} else {
+			int i = bounds[count - 1];
+			while ((i < to) && (buf.get(i) != ','))
+				i++;
+			bounds[count] = i + 1;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Precte cely radek jako retezec (pouziva se jen pro radky hlavicky)
+	 */
+	static String string(ByteBuffer buf, int from, int to) {
+		StringBuilder sb = new StringBuilder(to - from);
+
+		for (int i = from; i < to; i++)
+			sb.append((char) buf.get(i));
+
+		return sb.toString();
+	}
+
+	/**
+	 * Vrati pozici zacatku dalsiho radku od zadane pozice
+	 * @param buf Buffer s daty
+	 * @param pos Pozice, od ktere se hleda
+	 * @param limit Konec prohledavane oblasti
+	 * @return Pozice za nejblizsim znakem konce radku nebo limit
+	 */
+	static int nextRow(ByteBuffer buf, int pos, int limit) {
+		while (pos < limit) {
+			if (buf.get(pos++) == '\n')
+				return pos;
+		}
+
+		return limit;
+	}
+
+	/**
+	 * Vrati pozici zacatku dalsiho radku od zadane pozice, ktery neni zmenovy
+	 * (viz Schema), od takoveho radku lze zacit cist nezavisle
+	 * @param buf Buffer s daty
+	 * @param pos Pozice, od ktere se hleda
+	 * @param limit Konec prohledavane oblasti
+	 * @return Pozice zacatku uplneho radku nebo hlavicky nebo limit
+	 */
+	static int nextKeyframe(ByteBuffer buf, int pos, int limit) {
+		pos = nextRow(buf, pos, limit);
+		while ((pos < limit) && (buf.get(pos) == Schema.DELTA_PREFIX))
+			pos = nextRow(buf, pos, limit);
+
+		return pos;
+	}
+
+	/**
+	 * Porovna pole s retezcem v ASCII
+	 */
+	static boolean equals(ByteBuffer buf, int from, int to, String value) {
+		if ((to - from) != value.length())
+			return false;
+
+		for (int i = from; i < to; i++) {
+			if (buf.get(i) != value.charAt(i - from))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Vrati kod pole v tabulce retezcu
+	 * @return Kod nebo -1, pokud v tabulce neni
+	 */
+	static int codeOf(ByteBuffer buf, int from, int to, String[] table) {
+		for (int i = 0; i < table.length; i++) {
+			if (equals(buf, from, to, table[i]))
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Precte cele cislo
+	 * @return Hodnota nebo 0 pro prazdne ci chybne pole
+	 */
+	static int parseInt(ByteBuffer buf, int from, int to) {
+		boolean negative = false;
+		int result = 0;
+
+		if ((from < to) && (buf.get(from) == '-')) {
+			negative = true;
+			from++;
+		}
+
+		for (int i = from; i < to; i++) {
+			int digit = buf.get(i) - '0';
+			if ((digit < 0) || (digit > 9))
+				return 0;
+			result = result * 10 + digit;
+		}
+
+		return negative ? -result : result;
+	}
+
+	/**
+	 * Precte desetinne cislo ve tvaru vracenem Float.toString() a
+	 * Double.toString() (vcetne exponentu)
+	 * @return Hodnota nebo NaN pro prazdne ci chybne pole
+	 */
+	static double parseDouble(ByteBuffer buf, int from, int to) {
+		if (from >= to)
+			return Double.NaN;
+
+		boolean negative = false;
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		int exponent = 0;
+		int i = from;
+
+		if (buf.get(i) == '-') {
+			negative = true;
+			i++;
+		}
+
+		boolean fraction = false;
+		for (; i < to; i++) {
+			byte b = buf.get(i);
+
+			if ((b >= '0') && (b <= '9')) {
+				// Dalsi cislice nad presnost long jsou zanedbany
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (b - '0');
+					if (mantissa != 0)
+						digits++;
+					if (fraction)
+						scale--;
+				} else if (!fraction) {
+					scale++;
+				}
+			} else if ((b == '.') && !fraction) {
+				fraction = true;
+			} else if ((b == 'E') || (b == 'e')) {
+				exponent = parseInt(buf, i + 1, to);
+				break;
+			} else {
+				return Double.NaN;
+			}
+		}
+
+		double result = mantissa;
+		int power = scale + exponent;
+		if (power < 0)
+			result = (-power < POW10.length) ? result / POW10[-power] : result * Math.pow(10, power);
+		else if (power > 0)
+			result = (power < POW10.length) ? result * POW10[power] : result * Math.pow(10, power);
+
+		return negative ? -result : result;
+	}
+
+}
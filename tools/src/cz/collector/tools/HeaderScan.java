@@ -0,0 +1,68 @@
+package cz.collector.tools;
+
+import java.nio.ByteBuffer;
+import java.util.TreeMap;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Ukol pro vyhledani hlavicek (radku zacinajicich znakem #) v useku
+ * namapovaneho souboru. Vysledkem jsou pozice sloupcu podle pozice radku
+ * se seznamem sloupcu, podle kterych ParseTask urci format radku kazde
+ * zpracovavane oblasti. Usek je prohledavan soubezne po castech.
+ * @author Lukas Ambroz
+ */
+class HeaderScan extends RecursiveTask<TreeMap<Integer, Layout>> {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Velikost casti, ktera uz neni dale delena (16 MB) */
+	private static final int SPLIT_SIZE = 16 * 1024 * 1024;
+
+	/** Namapovany usek souboru */
+	private final ByteBuffer buf;
+	/** Zacatek prohledavane oblasti */
+	private final int from;
+	/** Konec prohledavane oblasti */
+	private final int to;
+
+	HeaderScan(ByteBuffer buf, int from, int to) {
+		this.buf = buf;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	protected TreeMap<Integer, Layout> compute() {
+		if ((to - from) > SPLIT_SIZE) {
+			int mid = from + (to - from) / 2;
+
+			HeaderScan left = new HeaderScan(buf, from, mid);
+			left.fork();
+			TreeMap<Integer, Layout> result = new HeaderScan(buf, mid, to).compute();
+			result.putAll(left.join());
+
+			return result;
+		}
+
+		TreeMap<Integer, Layout> result = new TreeMap<Integer, Layout>();
+		int limit = buf.limit();
+
+		for (int i = from; i < to; i++) {
+			if ((buf.get(i) != '#') || ((i > 0) && (buf.get(i - 1) != '\n')))
+				continue;
+
+			int end = i;
+			while ((end < limit) && (buf.get(end) != '\n'))
+				end++;
+			if ((end > i) && (buf.get(end - 1) == '\r'))
+				end--;
+
+			Layout layout = Layout.of(Fields.string(buf, i, end));
+			if (layout != null)
+				result.put(i, layout);
+		}
+
+		return result;
+	}
+
+}
@@ -0,0 +1,101 @@
+package cz.collector.tools;
+
+import cz.collector.Sample;
+import cz.collector.Schema;
+
+/**
+ * Pozice sloupcu potrebnych pro vypocet priznaku v radcich jednoho useku
+ * souboru. Pro vychozi format a pro starsi soubory bez hlavicky jsou pozice
+ * pevne, pro ostatni formaty jsou urceny podle nazvu sloupcu v hlavicce.
+ * Nepotrebne sloupce za posledni pouzitou pozici se pri cteni radku
+ * nerozdeluji.
+ * @author Lukas Ambroz
+ */
+final class Layout {
+
+	/** Vychozi format (hlavicka odpovida Schema.COLUMNS) */
+	static final Layout DEFAULT = new Layout(Sample.COLUMN_COUNT, Sample.COL_DAY_PART, Sample.COL_PLACE,
+			Sample.COL_APP_COUNT, Sample.COL_SCREEN, Sample.COL_CALL, Sample.COL_HEADSET,
+			Sample.COL_MOTION, Sample.COL_LIGHT, Sample.COL_MESSAGE);
+	/** Soubory bez hlavicky, pocet sloupcu urcuje kazdy radek */
+	static final Layout LEGACY = new Layout(-1, -1, -1, -1, -1, -1, -1, -1, -1, -1);
+	/** Radky souboru bez hlavicky s 15, 16 a 17 poli */
+	private static final Layout[] LEGACY_ROWS = { createLegacy(15), createLegacy(16), createLegacy(17) };
+
+	/** Pocet sloupcu v radku (-1 pro soubory bez hlavicky) */
+	final int columns;
+	final int dayPart;
+	final int place;
+	final int appCount;
+	final int screen;
+	final int call;
+	final int headset;
+	final int motion;
+	final int light;
+	final int message;
+	/** Nejvyssi pouzita pozice */
+	final int last;
+
+	private Layout(int columns, int dayPart, int place, int appCount, int screen, int call,
+			int headset, int motion, int light, int message) {
+		this.columns = columns;
+		this.dayPart = dayPart;
+		this.place = place;
+		this.appCount = appCount;
+		this.screen = screen;
+		this.call = call;
+		this.headset = headset;
+		this.motion = motion;
+		this.light = light;
+		this.message = message;
+
+		int max = -1;
+		for (int col : new int[] { dayPart, place, appCount, screen, call, headset, motion, light, message })
+			max = Math.max(max, col);
+		this.last = max;
+	}
+
+	/**
+	 * Vytvori pozice sloupcu podle radku hlavicky se seznamem sloupcu
+	 * @param line Radek hlavicky
+	 * @return Pozice sloupcu nebo null, pokud radek neni seznamem sloupcu
+	 */
+	static Layout of(String line) {
+		Schema.Column[] columns = Schema.parseColumns(line);
+
+		if (columns == null)
+			return null;
+		if (Schema.isDefault(columns))
+			return DEFAULT;
+
+		return new Layout(columns.length, Schema.indexOf(columns, "daypart"), Schema.indexOf(columns, "place"),
+				Schema.indexOf(columns, "apps"), Schema.indexOf(columns, "screen"), Schema.indexOf(columns, "call"),
+				Schema.indexOf(columns, "headset"), Schema.indexOf(columns, "motion"), Schema.indexOf(columns, "light"),
+				Schema.indexOf(columns, "message"));
+	}
+
+	/**
+	 * Vrati pozice sloupcu radku souboru bez hlavicky podle poctu jeho poli
+	 * @param count Pocet poli radku
+	 * @return Pozice sloupcu nebo null pro neznamy pocet poli
+	 */
+	static Layout legacy(int count) {
+		if ((count < 15) || (count > 17))
+			return null;
+
+		return LEGACY_ROWS[count - 15];
+	}
+
+	/**
+	 * Vytvori pozice sloupcu radku bez hlavicky. Tyto radky nemaji sloupec casu
+	 * a starsi z nich nemaji sloupec wifi, pripadne ani mista.
+	 */
+	private static Layout createLegacy(int count) {
+		// Pozice 0 az 11 jsou spolecne, misto je na pozici 12, akcelerace,
+		// svetlo a zprava jsou posledni tri sloupce
+		int place = (count >= 16) ? 12 : -1;
+
+		return new Layout(count, 4, place, 8, 7, 10, 9, count - 3, count - 2, count - 1);
+	}
+
+}
@@ -0,0 +1,209 @@
+package cz.collector.tools;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.RecursiveTask;
+
+import cz.collector.Sample;
+import cz.collector.Schema;
+
+/**
+ * Ukol pro zpracovani useku namapovaneho souboru. Usek vetsi nez SPLIT_SIZE
+ * je rozpulen na hranici radku a obe poloviny jsou zpracovany soubezne.
+ * Pole radku jsou ctena primo z bufferu, retezec vznika pouze pri zmene
+ * zpravy. Pozice sloupcu urcuje nejblizsi predchozi hlavicka useku souboru.
+ * Zmenove radky (viz Schema) jsou doplneny o hodnoty z predchozich radku
+ * tak, ze si ukol pamatuje pozici posledni hodnoty kazdeho sloupce
+ * v bufferu. Oblasti proto zacinaji vzdy klicovym radkem.
+ * @author Lukas Ambroz
+ */
+class ParseTask extends RecursiveTask<Features> {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Velikost useku, ktery uz neni dale delen (4 MB) */
+	static final int SPLIT_SIZE = 4 * 1024 * 1024;
+	/** Nejvyssi pocet poli v radku */
+	private static final int MAX_FIELDS = 64;
+
+	/** Namapovany usek souboru */
+	private final ByteBuffer buf;
+	/** Zacatek zpracovavane oblasti (zacatek radku) */
+	private final int from;
+	/** Konec zpracovavane oblasti (za koncem radku) */
+	private final int to;
+	/** Pozice sloupcu podle pozice hlavicky v useku */
+	private final NavigableMap<Integer, Layout> headers;
+	/** Pozice sloupcu platne pred prvni hlavickou useku */
+	private final Layout initial;
+
+	/**
+	 * @param buf Namapovany usek souboru
+	 * @param from Zacatek oblasti, musi byt zacatkem uplneho radku nebo hlavicky
+	 * @param to Konec oblasti, musi byt za koncem radku
+	 * @param headers Pozice sloupcu podle pozice hlavicky v useku (viz HeaderScan)
+	 * @param initial Pozice sloupcu platne pred prvni hlavickou useku
+	 */
+	ParseTask(ByteBuffer buf, int from, int to, NavigableMap<Integer, Layout> headers, Layout initial) {
+		this.buf = buf;
+		this.from = from;
+		this.to = to;
+		this.headers = headers;
+		this.initial = initial;
+	}
+
+	@Override
+	protected Features compute() {
+		if ((to - from) > SPLIT_SIZE) {
+			int mid = Fields.nextKeyframe(buf, from + (to - from) / 2, to);
+
+			ParseTask left = new ParseTask(buf, from, mid, headers, initial);
+			left.fork();
+			Features result = new ParseTask(buf, mid, to, headers, initial).compute();
+			result.merge(left.join());
+
+			return result;
+		}
+
+		return parse();
+	}
+
+	/**
+	 * Zpracuje vsechny radky oblasti v jednom vlakne
+	 */
+	private Features parse() {
+		Features result = new Features();
+		int[] bounds = new int[MAX_FIELDS + 1];
+		// Pozice posledni hodnoty kazdeho sloupce (konec je za hodnotou)
+		int[] starts = new int[MAX_FIELDS];
+		int[] ends = new int[MAX_FIELDS];
+		Map.Entry<Integer, Layout> header = headers.floorEntry(from);
+		Layout layout = (header != null) ? header.getValue() : initial;
+		Layout row = null;
+		int pos = from;
+
+		while (pos < to) {
+			int end = pos;
+			while ((end < to) && (buf.get(end) != '\n'))
+				end++;
+
+			int next = end + 1;
+			if ((end > pos) && (buf.get(end - 1) == '\r'))
+				end--;
+
+			if ((end > pos) && (buf.get(pos) == '#')) {
+				// Hlavicka noveho useku souboru
+				Layout changed = headers.get(pos);
+				if (changed != null)
+					layout = changed;
+				row = null;
+			} else if ((end > pos) && (buf.get(pos) == Schema.DELTA_PREFIX)) {
+				// Zmenovy radek bez predchoziho klicoveho radku nelze doplnit
+				if ((row != null) && applyDelta(bounds, row, starts, ends, pos + 1, end))
+					add(result, row, starts, ends);
+				else
+					result.skipped++;
+			} else if (end > pos) {
+				row = splitRow(bounds, layout, starts, ends, pos, end);
+				if (row != null)
+					add(result, row, starts, ends);
+				else
+					result.skipped++;
+			}
+
+			pos = next;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Rozdeli uplny radek a zapamatuje si pozice jeho hodnot, ctou se jen
+	 * pole az po posledni potrebne pole
+	 * @return Pozice sloupcu radku nebo null pro chybny radek
+	 */
+	private Layout splitRow(int[] bounds, Layout layout, int[] starts, int[] ends, int start, int end) {
+		int count;
+
+		if (layout.columns < 0) {
+			// Bez hlavicky urcuje pozice sloupcu pocet poli
+			count = Fields.split(buf, start, end, bounds, MAX_FIELDS);
+			layout = Layout.legacy(count);
+		} else {
+			count = Fields.split(buf, start, end, bounds, layout.last + 1);
+			if (count <= layout.last)
+				layout = null;
+		}
+
+		if (layout == null)
+			return null;
+
+		for (int i = 0; i <= layout.last; i++) {
+			starts[i] = bounds[i];
+			ends[i] = bounds[i + 1] - 1;
+		}
+
+		return layout;
+	}
+
+	/**
+	 * Prepise pozice hodnot sloupci uvedenymi ve zmenovem radku (bez uvodniho
+	 * znaku). Prvni pole je cas, ostatni maji tvar pozice=hodnota.
+	 * @return false pro chybny radek
+	 */
+	private boolean applyDelta(int[] bounds, Layout layout, int[] starts, int[] ends, int start, int end) {
+		int count = Fields.split(buf, start, end, bounds, MAX_FIELDS);
+
+		if (count < 0)
+			return false;
+
+		for (int f = 1; f < count; f++) {
+			int from = bounds[f];
+			int to = bounds[f + 1] - 1;
+			int eq = from;
+			while ((eq < to) && (buf.get(eq) != '='))
+				eq++;
+			if (eq == to)
+				return false;
+
+			int col = Fields.parseInt(buf, from, eq);
+			if ((col < 0) || (col >= layout.columns))
+				return false;
+			// Nepotrebne sloupce se nepamatuji
+			if (col <= layout.last) {
+				starts[col] = eq + 1;
+				ends[col] = to;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Zapocita radek s hodnotami na zadanych pozicich
+	 */
+	private void add(Features result, Layout layout, int[] starts, int[] ends) {
+		int label = (layout.message >= 0) ? result.label(buf, starts[layout.message], ends[layout.message]) : result.label("");
+		int dayPart = (layout.dayPart >= 0) ? Fields.codeOf(buf, starts[layout.dayPart], ends[layout.dayPart], Sample.DAY_PARTS) : -1;
+		int place = (layout.place >= 0) ? Fields.parseInt(buf, starts[layout.place], ends[layout.place]) : 0;
+
+		Features.Stats stats = result.stats(label, dayPart, place);
+		stats.count++;
+		if (layout.motion >= 0)
+			stats.motion.add(Fields.parseDouble(buf, starts[layout.motion], ends[layout.motion]));
+		if (layout.light >= 0)
+			stats.light.add(Fields.parseDouble(buf, starts[layout.light], ends[layout.light]));
+		if (layout.appCount >= 0)
+			stats.appCount += Fields.parseInt(buf, starts[layout.appCount], ends[layout.appCount]);
+		if ((layout.screen >= 0) && Fields.equals(buf, starts[layout.screen], ends[layout.screen], "on"))
+			stats.screenOn++;
+		if ((layout.call >= 0) && Fields.equals(buf, starts[layout.call], ends[layout.call], "yes"))
+			stats.call++;
+		if ((layout.headset >= 0) && Fields.equals(buf, starts[layout.headset], ends[layout.headset], "yes"))
+			stats.headset++;
+
+		result.rows++;
+	}
+
+}
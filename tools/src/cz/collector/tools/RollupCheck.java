@@ -0,0 +1,190 @@
+package cz.collector.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.TimeZone;
+
+import cz.collector.RollupPyramid;
+import cz.collector.RollupSlot;
+import cz.collector.Sample;
+import cz.collector.SampleStore;
+
+/**
+ * Kontrola souhrnu vzorku (viz RollupPyramid). Prida synteticke vzorky
+ * zadaneho poctu dnu po 30 s, v polovine uprostred slotu sber ukonci
+ * a zacne novy. Ctvrtina vzorku je bez polohy. Pro nekolik pozadovanych
+ * poctu bodu overi, ze dotaz na celou historii zahrne vsechny vzorky,
+ * prumer akcelerace odpovida presnemu prumeru a prumer polohy presnemu
+ * prumeru vzorku s polohou. Nakonec overi dotaz na posledni hodinu, ktery
+ * pouzije samotne vzorky. Druha cast prida v zone Europe/Prague dva dny
+ * vzorku pres konec letniho casu a hodinu vzorku po posunuti hodin o dva
+ * dny zpet a overi, ze kazda uroven obsahuje vsechny vzorky, zadny slot
+ * kratsi nez den neobsahuje vic vzorku, nez se do nej vejde, a zadny
+ * vzorek nebyl zahozen.
+ *
+ * Pouziti: RollupCheck [pocet dnu]
+ * @author Lukas Ambroz
+ */
+public class RollupCheck {
+
+	/** Interval mezi vzorky (ms) */
+	private static final long INTERVAL = 30000;
+	/** Povolena odchylka prumeru (float v souborech) */
+	private static final double TOLERANCE = 1e-3;
+
+	/**
+	 * Souhrn slotu vysledku dotazu
+	 */
+	static class Totals implements RollupPyramid.SlotVisitor {
+		int points = 0;
+		long count = 0;
+		int maxCount = 0;
+		long located = 0;
+		double motion = 0.0;
+		double latitude = 0.0;
+
+		@Override
+		public void visit(RollupSlot slot) {
+			points++;
+			count += slot.count;
+			maxCount = Math.max(maxCount, slot.count);
+			located += slot.located;
+			motion += (double) slot.mean[RollupSlot.MOTION] * slot.count;
+			latitude += (double) slot.mean[RollupSlot.LATITUDE] * slot.located;
+		}
+	}
+
+	/**
+	 * Prida vzorky pres konec letniho casu a po posunuti hodin zpet
+	 * a overi vsechny urovne
+	 * @return true, pokud kontrola prosla
+	 */
+	static boolean transitions(File dir) {
+		TimeZone.setDefault(TimeZone.getTimeZone("Europe/Prague"));
+		// 27.10.2012 0:00 UTC, letni cas konci 28.10.2012 v 1:00 UTC
+		long start = 1351296000000L;
+		int n = (int) (2 * 86400000 / INTERVAL);
+		int back = (int) (3600000 / INTERVAL);
+		SampleStore store = new SampleStore(new File(dir, "samples_dst.bin"));
+		RollupPyramid pyramid = new RollupPyramid(dir, store, INTERVAL);
+		Sample sample = new Sample();
+		boolean ok = true;
+
+		sample.message = "home";
+		for (int i = 0; i < n + back; i++) {
+			// Po dvou dnech jsou hodiny posunuty o dva dny zpet
+			sample.time = (i < n) ? start + i * INTERVAL : start - 2 * 86400000L + (i - n) * INTERVAL;
+			sample.motion = 9.81F;
+			store.append(sample);
+			pyramid.add(sample);
+		}
+
+		long from = start - 3 * 86400000L;
+		long to = start + 3 * 86400000L;
+		for (int maxPoints : new int[] { 2000, 200, 7 }) {
+			Totals totals = new Totals();
+			long width = pyramid.query(from, to, maxPoints, totals);
+			long capacity = (width < 86400000) ? width / INTERVAL : Long.MAX_VALUE;
+
+			System.out.println("dst: width=" + width + " samples=" + totals.count + "/" + (n + back)
+					+ " max_slot=" + totals.maxCount + " dropped=" + pyramid.getDropped());
+			ok &= (width > 0) && (totals.count == n + back) && (totals.maxCount <= capacity);
+		}
+		ok &= (pyramid.getDropped() == 0);
+
+		return ok;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int days = (args.length > 0) ? Integer.parseInt(args[0]) : 40;
+		int n = days * (int) (86400000 / INTERVAL);
+		File dir = Files.createTempDirectory("collector-rollup").toFile();
+		Random random = new Random(3);
+		Sample sample = new Sample();
+		long start = 1340000000000L;
+		boolean ok = true;
+
+		SampleStore store = null;
+		RollupPyramid pyramid = null;
+		long end = start + (n - 1) * INTERVAL;
+		long located = 0;
+		long lastHourLocated = 0;
+		double motion = 0.0;
+		double latitude = 0.0;
+
+		try {
+			for (int i = 0; i < n; i++) {
+				// Novy sber uprostred slotu
+				if ((i == 0) || (i == n / 2 + 7)) {
+					if (pyramid != null)
+						pyramid.flush();
+					store = new SampleStore(new File(dir, "samples.bin"));
+					pyramid = new RollupPyramid(dir, store, INTERVAL);
+				}
+
+				sample.time = start + i * INTERVAL;
+				if ((i % 4) == 0) {
+					sample.latitude = 0.0;
+					sample.longitude = 0.0;
+				} else {
+					sample.latitude = 50.08 + random.nextFloat() * 0.01;
+					sample.longitude = 14.42 + random.nextFloat() * 0.01;
+					latitude += (float) sample.latitude;
+					located++;
+					if (sample.time >= end - 3600000)
+						lastHourLocated++;
+				}
+				sample.motion = 9.0F + random.nextFloat();
+				sample.light = 100.0F;
+				sample.place = (i / 500) % 3;
+				sample.message = (((i / 10000) % 2) == 0) ? "home" : "work";
+				motion += sample.motion;
+
+				// Stejne jako SensorReader: vzorek do uloziste sberu i do souhrnu
+				store.append(sample);
+				pyramid.add(sample);
+			}
+
+			for (int maxPoints : new int[] { 100, 1000, 20000 }) {
+				Totals totals = new Totals();
+				long width = pyramid.query(start, end, maxPoints, totals);
+				double motionMean = totals.motion / totals.count;
+				double latitudeMean = totals.latitude / totals.located;
+
+				System.out.printf("max_points=%d width=%d points=%d samples=%d/%d located=%d/%d motion=%.5f/%.5f lat=%.5f/%.5f%n",
+						maxPoints, width, totals.points, totals.count, n, totals.located, located,
+						motionMean, motion / n, latitudeMean, latitude / located);
+				ok &= (width > 0) && (totals.points <= maxPoints) && (totals.count == n) && (totals.located == located)
+						&& (Math.abs(motionMean - motion / n) < TOLERANCE)
+						&& (Math.abs(latitudeMean - latitude / located) < TOLERANCE);
+			}
+
+			Totals totals = new Totals();
+			long width = pyramid.query(end - 3600000, end, 500, totals);
+			System.out.println("last hour: width=" + width + " points=" + totals.points + " located=" + totals.located
+					+ "/" + lastHourLocated);
+			ok &= (width == INTERVAL) && (totals.points == 3600000 / INTERVAL + 1) && (totals.located == lastHourLocated);
+
+			File dst = new File(dir, "dst");
+			dst.mkdir();
+			ok &= transitions(dst);
+		} finally {
+			File dst = new File(dir, "dst");
+			if (dst.exists()) {
+				for (File file : dst.listFiles())
+					file.delete();
+				dst.delete();
+			}
+			for (File file : dir.listFiles())
+				file.delete();
+			dir.delete();
+		}
+
+		System.out.println(ok ? "OK" : "FAILED");
+		if (!ok)
+			System.exit(1);
+	}
+
+}
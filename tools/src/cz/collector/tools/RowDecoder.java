@@ -0,0 +1,102 @@
+package cz.collector.tools;
+
+import cz.collector.Schema;
+
+/**
+ * Rekonstrukce uplnych radku souboru data.csv z klicovych a zmenovych radku
+ * (viz Schema) v jednom pruchodu. Dekoder si pamatuje posledni hodnotu
+ * kazdeho sloupce, zmenovy radek prepise jen uvedene sloupce. Cteni musi
+ * zacit klicovym radkem nebo hlavickou.
+ * @author Lukas Ambroz
+ */
+final class RowDecoder {
+
+	/** Posledni hodnoty sloupcu */
+	private String[] values;
+	/** Priznak nacteneho klicoveho radku */
+	private boolean keyed = false;
+
+	/**
+	 * @param columns Pocet sloupcu podle hlavicky
+	 */
+	RowDecoder(int columns) {
+		values = new String[columns];
+	}
+
+	/**
+	 * Zapomene hodnoty, dalsi radek musi byt klicovy (napr. za hlavickou)
+	 */
+	void reset() {
+		keyed = false;
+	}
+
+	/**
+	 * Zpracuje radek dat
+	 * @param line Klicovy nebo zmenovy radek
+	 * @return false pro chybny radek nebo zmenovy radek bez predchoziho
+	 * klicoveho radku
+	 */
+	boolean apply(String line) {
+		if ((line.length() > 0) && (line.charAt(0) == Schema.DELTA_PREFIX)) {
+			if (!keyed)
+				return false;
+
+			String[] fields = line.substring(1).split(",", -1);
+			values[0] = fields[0];
+			for (int f = 1; f < fields.length; f++) {
+				int eq = fields[f].indexOf('=');
+				if (eq < 0)
+					return false;
+
+				int col;
+				try {
+					col = Integer.parseInt(fields[f].substring(0, eq));
+				} catch (NumberFormatException nfe) {
+					return false;
+				}
+				if ((col < 0) || (col >= values.length))
+					return false;
+				values[col] = fields[f].substring(eq + 1);
+			}
+
+			return true;
+		}
+
+		String[] fields = line.split(",", -1);
+		if (fields.length != values.length) {
+			keyed = false;
+			return false;
+		}
+
+		System.arraycopy(fields, 0, values, 0, values.length);
+		keyed = true;
+
+		return true;
+	}
+
+	/**
+	 * Vrati hodnotu sloupce posledniho radku
+	 * @param col Pozice sloupce
+	 * @return Hodnota
+	 */
+	String get(int col) {
+		return values[col];
+	}
+
+	/**
+	 * Vrati posledni radek jako uplny radek
+	 * @return Uplny radek
+	 */
+	String row() {
+		StringBuilder sb = new StringBuilder(256);
+
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				sb.append(',');
+			sb.append(values[i]);
+		}
+
+		return sb.toString();
+	}
+
+}
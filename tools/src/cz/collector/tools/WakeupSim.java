@@ -0,0 +1,115 @@
+package cz.collector.tools;
+
+import cz.collector.SimulatedAlarmClock;
+import cz.collector.WakeupScheduler;
+
+/**
+ * Simulace planovani kroku sberu mimo zarizeni. WakeupScheduler je rizen
+ * simulovanymi hodinami (SimulatedAlarmClock), kazdy krok drzi zarizeni
+ * vzhure po zadanou dobu a skonci az po ni, takze probuzeni behem kroku se
+ * projevi jako v zarizeni. WakeLock je modelovan jako v TickReceiver
+ * a BckgndCollector: kazde probuzeni ziska referenci s dobou platnosti
+ * WAKE_TIMEOUT a uvolni ji, pokud se krok nespustil, jinak ji uvolni
+ * dokonceny krok. Vypise pocet kroku, vynechana probuzeni, kroky, ktere
+ * skoncily bez drzeneho WakeLock, a podil doby probuzeni na celkove dobe.
+ *
+ * Pouziti: WakeupSim [interval v ms] [doba kroku v ms] [doba simulace v h]
+ * @author Lukas Ambroz
+ */
+public class WakeupSim {
+
+	/** Vychozi interval mezi kroky (BckgndCollector.TICK_PERIOD) */
+	private static final long PERIOD = 30000;
+	/** Vychozi doba kroku (BckgndCollector.SAMPLE_WINDOW) */
+	private static final long AWAKE = 2000;
+	/** Doba platnosti WakeLock jednoho probuzeni (TickReceiver.TICK_WAKE_TIMEOUT) */
+	private static final long WAKE_TIMEOUT = 10000;
+
+	/** Simulovane hodiny */
+	private final SimulatedAlarmClock clock = new SimulatedAlarmClock();
+	/** Planovani kroku */
+	private final WakeupScheduler scheduler;
+	/** Doba kroku (ms) */
+	private final long awake;
+
+	/** Cas konce probihajiciho kroku (-1, pokud krok neprobiha) */
+	private long tickEnd = -1;
+	/** Pocet neuvolnenych referenci WakeLock */
+	private int holders = 0;
+	/** Konec platnosti WakeLock */
+	private long expires = 0;
+	/** Pocet kroku, ktere skoncily bez drzeneho WakeLock */
+	private int lost = 0;
+
+	WakeupSim(long period, long awake) {
+		this.awake = awake;
+
+		scheduler = new WakeupScheduler(clock, period, new WakeupScheduler.Task() {
+			@Override
+			public void onTick() {
+				tickEnd = clock.now() + awake;
+			}
+		});
+		clock.setHandler(new Runnable() {
+			@Override
+			public void run() {
+				// TickReceiver.onReceive() a BckgndCollector.onStartCommand()
+				holders++;
+				expires = clock.now() + WAKE_TIMEOUT;
+				if (scheduler.onAlarm() != WakeupScheduler.STARTED)
+					release();
+			}
+		});
+	}
+
+	/**
+	 * Uvolni referenci WakeLock (TickReceiver.release())
+	 */
+	private void release() {
+		if (holders > 0)
+			holders--;
+	}
+
+	/**
+	 * Spusti simulaci zadane delky
+	 * @param millis Doba simulace (ms)
+	 */
+	void run(long millis) {
+		long end = clock.now() + millis;
+
+		scheduler.start(scheduler.getPeriod());
+		while (clock.now() < end) {
+			if ((tickEnd >= 0) && (tickEnd <= end)) {
+				// Probuzeni behem kroku jsou dorucena pred jeho koncem
+				clock.advance(tickEnd - clock.now());
+				if ((holders == 0) || (clock.now() > expires))
+					lost++;
+				tickEnd = -1;
+				scheduler.tickDone();
+				release();
+			} else if ((tickEnd < 0) && (clock.getTriggerAt() >= 0) && (clock.getTriggerAt() <= end)) {
+				// Dalsi probuzeni spusti krok
+				clock.advance(clock.getTriggerAt() - clock.now());
+			} else {
+				clock.advance(end - clock.now());
+			}
+		}
+		scheduler.stop();
+	}
+
+	public static void main(String[] args) {
+		long period = (args.length > 0) ? Long.parseLong(args[0]) : PERIOD;
+		long awake = (args.length > 1) ? Long.parseLong(args[1]) : AWAKE;
+		double hours = (args.length > 2) ? Double.parseDouble(args[2]) : 1.0;
+
+		WakeupSim sim = new WakeupSim(period, awake);
+		sim.run((long) (hours * 3600000));
+
+		System.out.printf("period=%d ms awake=%d ms simulated=%.1f h ticks=%d overlaps=%d lock_lost=%d awake_max=%d ms awake_ratio=%.1f%%%n",
+				period, awake, hours, sim.scheduler.getTicks(), sim.scheduler.getOverlaps(), sim.lost,
+				sim.scheduler.getAwakeMax(), sim.scheduler.getAwakeRatio() * 100.0F);
+		if (sim.lost > 0)
+			System.exit(1);
+	}
+
+}